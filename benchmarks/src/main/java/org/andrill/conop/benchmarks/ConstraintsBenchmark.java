@@ -0,0 +1,125 @@
+package org.andrill.conop.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.EventConstraints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Benchmarks checking solutions against the event constraints.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstraintsBenchmark {
+
+	@State(Scope.Thread)
+	public static class ConstraintsState {
+		@Param({ "riley", "andrill", "odp" })
+		public String repository;
+
+		@Param({ "false", "true" })
+		public boolean taxa;
+
+		public EventConstraints constraints;
+		public Solution[] shuffled;
+		public Solution current;
+		public Solution valid;
+		public Random random;
+		public int next = 0;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Dataset dataset = Datasets.load(repository);
+
+			Map<Object, Object> config = Maps.newHashMap();
+			config.put("taxa", taxa);
+			constraints = new EventConstraints();
+			constraints.configure(new Configuration(config));
+			constraints.setContext(Datasets.context(dataset));
+
+			shuffled = Datasets.shuffled(dataset, 64, 42);
+			current = Solution.initial(dataset);
+			valid = valid(dataset, constraints);
+			random = new Random(42);
+		}
+
+		/**
+		 * Orders the events so they satisfy the constraints.
+		 */
+		protected Solution valid(final Dataset dataset, final EventConstraints constraints) {
+			int[][] predecessors = constraints.getPredecessors();
+			int[][] successors = constraints.getSuccessors();
+			int n = predecessors.length;
+			int[] waiting = new int[n];
+			int[] order = new int[n];
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				waiting[i] = predecessors[i].length;
+				if (waiting[i] == 0) {
+					order[count++] = i;
+				}
+			}
+			for (int k = 0; k < count; k++) {
+				for (int s : successors[order[k]]) {
+					if (--waiting[s] == 0) {
+						order[count++] = s;
+					}
+				}
+			}
+			return (count == n) ? new Solution(dataset, order) : current;
+		}
+
+		public Solution shuffled() {
+			next = (next + 1) % shuffled.length;
+			return shuffled[next];
+		}
+
+		public Solution move() {
+			int size = current.size();
+			return current.move(random.nextInt(size), random.nextInt(size));
+		}
+
+		public Solution validMove() {
+			int size = valid.size();
+			return valid.move(random.nextInt(size), random.nextInt(size));
+		}
+	}
+
+	@Benchmark
+	public boolean isValidMove(final ConstraintsState state) {
+		return state.constraints.isValid(state.move());
+	}
+
+	@Benchmark
+	public boolean isValidMoveFromValid(final ConstraintsState state) {
+		return state.constraints.isValid(state.validMove());
+	}
+
+	@Benchmark
+	public boolean isValidShuffled(final ConstraintsState state) {
+		return state.constraints.isValid(state.shuffled());
+	}
+}
@@ -0,0 +1,111 @@
+package org.andrill.conop.benchmarks;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Event;
+import org.andrill.conop.core.Location;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.internal.DefaultDataset;
+import org.andrill.conop.core.internal.DefaultSolverContext;
+import org.andrill.conop.core.solver.SolverContext;
+import org.andrill.conop.data.Conop9Repository;
+import org.andrill.conop.data.LocalRepository;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Loads the bundled test repositories as datasets for the benchmarks.
+ *
+ * The repositories are found under the directory named by the
+ * <code>conop.repos</code> system property, which defaults to the data
+ * module's test resources.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public final class Datasets {
+	private static final String DEFAULT_REPOS = "data/src/test/resources/repos";
+	private static final Map<String, Dataset> cache = Maps.newHashMap();
+
+	/**
+	 * Creates a context for the dataset.
+	 *
+	 * @param dataset
+	 *            the dataset.
+	 * @return the context.
+	 */
+	public static SolverContext context(final Dataset dataset) {
+		SolverContext context = new DefaultSolverContext();
+		context.setDataset(dataset);
+		return context;
+	}
+
+	/**
+	 * Loads a dataset, either 'riley' for the CONOP9 repository or the name of
+	 * a program in the local repository, e.g. 'odp' or 'andrill'.
+	 *
+	 * @param name
+	 *            the name.
+	 * @return the dataset.
+	 */
+	public static synchronized Dataset load(final String name) {
+		Dataset dataset = cache.get(name);
+		if (dataset == null) {
+			File root = new File(System.getProperty("conop.repos", DEFAULT_REPOS));
+			if ("riley".equals(name)) {
+				dataset = new Conop9Repository(new File(root, "conop9/riley")).getDataset();
+			} else {
+				File local = new File(root, "local");
+				File[] files = new File(local, name).listFiles();
+				if (files == null) {
+					throw new IllegalArgumentException("Unknown repository '" + name + "' in " + root);
+				}
+				Arrays.sort(files);
+
+				LocalRepository repository = new LocalRepository(local);
+				List<Location> locations = Lists.newArrayList();
+				for (File f : files) {
+					if (f.getName().endsWith(".json")) {
+						String site = f.getName().substring(0, f.getName().length() - 5);
+						locations.add(repository.getLocation(name + ":" + site));
+					}
+				}
+				dataset = new DefaultDataset(locations);
+			}
+			cache.put(name, dataset);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Creates random solutions for the dataset.
+	 *
+	 * @param dataset
+	 *            the dataset.
+	 * @param count
+	 *            the number of solutions.
+	 * @param seed
+	 *            the random seed.
+	 * @return the solutions.
+	 */
+	public static Solution[] shuffled(final Dataset dataset, final int count, final long seed) {
+		Random random = new Random(seed);
+		Solution[] solutions = new Solution[count];
+		for (int i = 0; i < count; i++) {
+			List<Event> events = Lists.newArrayList(dataset.getEvents());
+			Collections.shuffle(events, random);
+			solutions[i] = new Solution(dataset, events);
+		}
+		return solutions;
+	}
+
+	private Datasets() {
+		// not instantiable
+	}
+}
@@ -0,0 +1,92 @@
+package org.andrill.conop.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.NullConstraints;
+import org.andrill.conop.core.internal.CandidateGenerator;
+import org.andrill.conop.core.internal.InlineGenerator;
+import org.andrill.conop.core.internal.RingGenerator;
+import org.andrill.conop.core.internal.SolutionGenerator;
+import org.andrill.conop.core.mutators.RandomMutator;
+import org.andrill.conop.core.solver.SolverContext;
+import org.andrill.conop.core.solver.SolverStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Benchmarks handing candidate solutions from the generators to the solver.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+	@State(Scope.Thread)
+	public static class GeneratorState {
+		@Param({ "riley", "andrill", "odp" })
+		public String repository;
+
+		@Param({ "queue", "inline", "ring" })
+		public String generator;
+
+		public CandidateGenerator instance;
+		public int count = 0;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Dataset dataset = Datasets.load(repository);
+			SolverContext context = Datasets.context(dataset);
+			context.put(SolverStats.class, new SolverStats());
+
+			RandomMutator mutator = new RandomMutator();
+			mutator.configure(new Configuration(Maps.newHashMap()));
+			mutator.setContext(context);
+
+			if ("inline".equals(generator)) {
+				instance = new InlineGenerator(context, mutator, new NullConstraints());
+			} else if ("ring".equals(generator)) {
+				instance = new RingGenerator(context, mutator, new NullConstraints(), 20);
+			} else {
+				instance = new SolutionGenerator(context, mutator, new NullConstraints(), 20);
+			}
+			instance.setCurrent(Solution.initial(dataset));
+			instance.start();
+		}
+
+		@TearDown(Level.Trial)
+		public void teardown() {
+			instance.kill();
+		}
+	}
+
+	@Benchmark
+	public Solution next(final GeneratorState state) {
+		Solution next = state.instance.getNext();
+
+		// accept every fourth candidate so the chain keeps moving
+		if ((++state.count & 3) == 0) {
+			state.instance.setCurrent(next);
+		}
+		return next;
+	}
+}
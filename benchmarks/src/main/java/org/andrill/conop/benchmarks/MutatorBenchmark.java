@@ -0,0 +1,83 @@
+package org.andrill.conop.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.internal.AnnealingMutator;
+import org.andrill.conop.core.internal.MethodicalMutator;
+import org.andrill.conop.core.mutators.AbstractMutator;
+import org.andrill.conop.core.mutators.PortfolioMutator;
+import org.andrill.conop.core.mutators.RandomMutator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Benchmarks creating candidate solutions with the mutators.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutatorBenchmark {
+
+	@State(Scope.Thread)
+	public static class MutatorState {
+		@Param({ "riley", "andrill", "odp" })
+		public String repository;
+
+		@Param({ "random", "annealing", "methodical", "portfolio" })
+		public String mutator;
+
+		public AbstractMutator instance;
+		public Solution current;
+		public int count = 0;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Dataset dataset = Datasets.load(repository);
+
+			if ("annealing".equals(mutator)) {
+				instance = new AnnealingMutator();
+			} else if ("methodical".equals(mutator)) {
+				instance = new MethodicalMutator();
+			} else if ("portfolio".equals(mutator)) {
+				instance = new PortfolioMutator();
+			} else {
+				instance = new RandomMutator();
+			}
+			instance.configure(new Configuration(Maps.newHashMap()));
+			instance.setContext(Datasets.context(dataset));
+			instance.tried(100, null, null);
+
+			current = Solution.initial(dataset);
+		}
+	}
+
+	@Benchmark
+	public Solution mutate(final MutatorState state) {
+		Solution next = state.instance.mutate(state.current);
+
+		// accept every fourth candidate so the chain keeps moving
+		if ((++state.count & 3) == 0) {
+			state.current = next;
+		}
+		return next;
+	}
+}
@@ -0,0 +1,100 @@
+package org.andrill.conop.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.andrill.conop.core.Configurable;
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.penalties.MatrixPenalty;
+import org.andrill.conop.core.penalties.Penalty;
+import org.andrill.conop.core.penalties.PlacementPenalty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Benchmarks scoring solutions with the penalties.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PenaltyBenchmark {
+
+	@State(Scope.Thread)
+	public static class PenaltyState {
+		@Param({ "riley", "andrill", "odp" })
+		public String repository;
+
+		@Param({ "matrix", "matrix-full", "matrix-single", "placement" })
+		public String penalty;
+
+		public Penalty instance;
+		public Solution[] shuffled;
+		public Solution current;
+		public Random random;
+		public int next = 0;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Dataset dataset = Datasets.load(repository);
+
+			Map<Object, Object> config = Maps.newHashMap();
+			config.put("processors", 1);
+			if ("placement".equals(penalty)) {
+				instance = new PlacementPenalty();
+			} else {
+				instance = new MatrixPenalty();
+				config.put("incremental", !"matrix-full".equals(penalty));
+				config.put("precision", "matrix-single".equals(penalty) ? "single" : "double");
+			}
+			((Configurable) instance).configure(new Configuration(config));
+			((Configurable) instance).setContext(Datasets.context(dataset));
+
+			shuffled = Datasets.shuffled(dataset, 64, 42);
+			current = shuffled[0];
+			random = new Random(42);
+		}
+
+		public Solution shuffled() {
+			next = (next + 1) % shuffled.length;
+			return shuffled[next];
+		}
+
+		public Solution move() {
+			int size = current.size();
+			Solution solution = current.move(random.nextInt(size), random.nextInt(size));
+			if (random.nextInt(4) == 0) {
+				current = solution;
+			}
+			return solution;
+		}
+	}
+
+	@Benchmark
+	public double scoreMove(final PenaltyState state) {
+		return state.instance.score(state.move());
+	}
+
+	@Benchmark
+	public double scoreShuffled(final PenaltyState state) {
+		return state.instance.score(state.shuffled());
+	}
+}
@@ -0,0 +1,77 @@
+package org.andrill.conop.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Event;
+import org.andrill.conop.core.Solution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks creating solutions.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolutionBenchmark {
+
+	@State(Scope.Thread)
+	public static class SolutionState {
+		@Param({ "riley", "andrill", "odp" })
+		public String repository;
+
+		public Dataset dataset;
+		public List<Event> events;
+		public Solution current;
+		public Random random;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			dataset = Datasets.load(repository);
+			events = Datasets.shuffled(dataset, 1, 42)[0].getEvents();
+			current = Solution.initial(dataset);
+			random = new Random(42);
+		}
+	}
+
+	@Benchmark
+	public Solution fromEvents(final SolutionState state) {
+		return new Solution(state.dataset, state.events);
+	}
+
+	@Benchmark
+	public Solution initial(final SolutionState state) {
+		return Solution.initial(state.dataset);
+	}
+
+	@Benchmark
+	public int move(final SolutionState state) {
+		int size = state.current.size();
+		Solution next = state.current.move(state.random.nextInt(size), state.random.nextInt(size));
+		return next.getPosition(next.getId(size / 2));
+	}
+
+	@Benchmark
+	public Solution moveAndAccept(final SolutionState state) {
+		int size = state.current.size();
+		state.current = state.current.move(state.random.nextInt(size), state.random.nextInt(size));
+		return state.current;
+	}
+}
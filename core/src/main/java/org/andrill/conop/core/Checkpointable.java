@@ -0,0 +1,34 @@
+package org.andrill.conop.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Defines the interface for an object whose internal state can be saved to and
+ * restored from a checkpoint, so a run can resume exactly where it left off.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public interface Checkpointable {
+
+	/**
+	 * Restores the state of this object.
+	 *
+	 * @param in
+	 *            the saved state.
+	 * @throws IOException
+	 *             if the state could not be read.
+	 */
+	public void restore(DataInput in) throws IOException;
+
+	/**
+	 * Saves the state of this object.
+	 *
+	 * @param out
+	 *            the output.
+	 * @throws IOException
+	 *             if the state could not be written.
+	 */
+	public void save(DataOutput out) throws IOException;
+}
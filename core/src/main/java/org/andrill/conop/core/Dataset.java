@@ -4,6 +4,15 @@ import com.google.common.collect.ImmutableSet;
 
 public interface Dataset {
 
+	/**
+	 * Gets the event with the specified id.
+	 *
+	 * @param id
+	 *            the id.
+	 * @return the event.
+	 */
+	public abstract Event getEvent(int id);
+
 	/**
 	 * Gets all events in this dataset.
 	 *
@@ -11,6 +20,14 @@ public interface Dataset {
 	 */
 	public abstract ImmutableSet<Event> getEvents();
 
+	/**
+	 * Gets the id of the specified event. Ids run from 0 to the number of
+	 * events - 1.
+	 *
+	 * @param e
+	 *            the event.
+	 * @return the id.
+	 */
 	public abstract int getId(Event e);
 
 	/**
@@ -6,15 +6,78 @@ import java.util.Map;
 import org.andrill.conop.core.util.IdentityOptimizedMap;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * A solution contains a set of events in a particular order.
  *
+ * Internally the order is stored as an array of event ids, as assigned by
+ * {@link Dataset#getId(Event)}, along with the inverse array of positions. The
+ * {@link Event} based methods are a view over these arrays.
+ *
+ * A solution created by {@link #move(int, int)} only records its parent and
+ * the move, and answers position queries relative to the parent. Its own
+ * arrays are only built if it becomes the parent of another move, so rejected
+ * candidates never copy the order.
+ *
  * @author Josh Reed (jareed@andrill.org)
  */
 public class Solution {
 
+	/**
+	 * Indexes a plain list of events for solutions that are not created from a
+	 * {@link Dataset}.
+	 */
+	private static class ListDataset implements Dataset {
+		protected final ImmutableSet<Event> events;
+		protected final Event[] table;
+		protected final Map<Event, Integer> ids = new IdentityOptimizedMap<Event, Integer>();
+
+		ListDataset(final List<Event> list) {
+			events = ImmutableSet.copyOf(list);
+			table = list.toArray(new Event[list.size()]);
+			for (int i = 0; i < table.length; i++) {
+				ids.put(table[i], i);
+			}
+		}
+
+		@Override
+		public Event getEvent(final int id) {
+			return table[id];
+		}
+
+		@Override
+		public ImmutableSet<Event> getEvents() {
+			return events;
+		}
+
+		@Override
+		public int getId(final Event e) {
+			return ids.get(e);
+		}
+
+		@Override
+		public ImmutableSet<Location> getLocations() {
+			return ImmutableSet.of();
+		}
+	}
+
+	/**
+	 * The order and position arrays of a solution.
+	 */
+	protected static final class Index {
+		final int[] order;
+		final int[] positions;
+
+		Index(final int[] order) {
+			this.order = order;
+			positions = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				positions[order[i]] = i;
+			}
+		}
+	}
+
 	/**
 	 * Creates an initial solution.
 	 *
@@ -23,14 +86,57 @@ public class Solution {
 	 * @return the initial solution.
 	 */
 	public static Solution initial(final Dataset dataset) {
-		final List<Event> events = Lists.newArrayList(dataset.getEvents());
-		return new Solution(events);
+		final int[] order = new int[dataset.getEvents().size()];
+		int i = 0;
+		for (Event e : dataset.getEvents()) {
+			order[i++] = dataset.getId(e);
+		}
+		return new Solution(dataset, order);
 	}
 
-	protected final ImmutableList<Event> events;
-	protected final Map<Event, Integer> positions;
+	protected final Dataset dataset;
+	protected Index index = null;
+	protected volatile Solution parent = null;
+	protected final int from;
+	protected final int to;
+	protected ImmutableList<Event> events = null;
 	protected double score = -1.0;
 
+	/**
+	 * Create a new Solution with the specified ordered list of events.
+	 *
+	 * @param dataset
+	 *            the dataset the events belong to.
+	 * @param events
+	 *            the list of events.
+	 */
+	public Solution(final Dataset dataset, final List<Event> events) {
+		this.dataset = dataset;
+		int[] order = new int[events.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = dataset.getId(events.get(i));
+		}
+		index = new Index(order);
+		from = -1;
+		to = -1;
+	}
+
+	/**
+	 * Create a new Solution with the specified order of event ids. The array
+	 * is owned by the solution and must not be modified afterwards.
+	 *
+	 * @param dataset
+	 *            the dataset the ids belong to.
+	 * @param order
+	 *            the event ids in solution order.
+	 */
+	public Solution(final Dataset dataset, final int[] order) {
+		this.dataset = dataset;
+		index = new Index(order);
+		from = -1;
+		to = -1;
+	}
+
 	/**
 	 * Create a new Solution with the specified ordered list of events.
 	 *
@@ -38,12 +144,79 @@ public class Solution {
 	 *            the list of events.
 	 */
 	public Solution(final List<Event> events) {
-		this.events = ImmutableList.copyOf(events);
+		this(new ListDataset(events), events);
+	}
 
-		positions = new IdentityOptimizedMap<Event, Integer>();
-		for (int i = 0; i < events.size(); i++) {
-			positions.put(events.get(i), i);
+	/**
+	 * Create a new Solution that moves a single event of the parent.
+	 *
+	 * @param parent
+	 *            the parent solution, which must have its own index.
+	 * @param from
+	 *            the position of the event in the parent.
+	 * @param to
+	 *            the position of the event in this solution.
+	 */
+	protected Solution(final Solution parent, final int from, final int to) {
+		dataset = parent.dataset;
+		this.parent = parent;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Gets the index of this solution, building it from the parent if needed.
+	 */
+	protected Index index() {
+		Index i = index;
+		if (i == null) {
+			Solution p = parent;
+			if (p == null) {
+				// built by another thread
+				return index;
+			}
+			int[] source = p.index().order;
+			int[] order = new int[source.length];
+			System.arraycopy(source, 0, order, 0, source.length);
+			if (from < to) {
+				System.arraycopy(source, from + 1, order, from, to - from);
+			} else if (from > to) {
+				System.arraycopy(source, to, order, to + 1, from - to);
+			}
+			order[to] = source[from];
+			i = new Index(order);
+			index = i;
+
+			// release the parent so accepted solutions do not form a chain
+			parent = null;
 		}
+		return i;
+	}
+
+	/**
+	 * Gets this solution using the event ids of the specified dataset. Returns
+	 * this solution if it was already created from the dataset.
+	 *
+	 * @param dataset
+	 *            the dataset.
+	 * @return the solution indexed by the dataset.
+	 */
+	public Solution forDataset(final Dataset dataset) {
+		if (this.dataset == dataset) {
+			return this;
+		}
+		Solution indexed = new Solution(dataset, getEvents());
+		indexed.score = score;
+		return indexed;
+	}
+
+	/**
+	 * Gets the dataset that assigns the event ids in this solution.
+	 *
+	 * @return the dataset.
+	 */
+	public Dataset getDataset() {
+		return dataset;
 	}
 
 	/**
@@ -54,7 +227,7 @@ public class Solution {
 	 * @return the event.
 	 */
 	public Event getEvent(final int position) {
-		return events.get(position);
+		return dataset.getEvent(getId(position));
 	}
 
 	/**
@@ -63,7 +236,69 @@ public class Solution {
 	 * @return the immutable list of events.
 	 */
 	public ImmutableList<Event> getEvents() {
-		return events;
+		ImmutableList<Event> list = events;
+		if (list == null) {
+			ImmutableList.Builder<Event> b = ImmutableList.builder();
+			for (int i = 0; i < size(); i++) {
+				b.add(getEvent(i));
+			}
+			list = b.build();
+			events = list;
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the id of the event at the specified position.
+	 *
+	 * @param position
+	 *            the position.
+	 * @return the event id.
+	 */
+	public int getId(final int position) {
+		Index i = index;
+		if (i != null) {
+			return i.order[position];
+		}
+		Solution p = parent;
+		if (p == null) {
+			return index().order[position];
+		}
+		if ((position == to) || ((position < from) && (position < to)) || ((position > from) && (position > to))) {
+			return p.getId(position == to ? from : position);
+		} else if (from < to) {
+			return p.getId(position + 1);
+		} else {
+			return p.getId(position - 1);
+		}
+	}
+
+	/**
+	 * Gets the position of the event that was moved to create this solution.
+	 *
+	 * @return the position in the parent or -1 if not created by a move.
+	 */
+	public int getMoveFrom() {
+		return from;
+	}
+
+	/**
+	 * Gets the position the event was moved to when creating this solution.
+	 *
+	 * @return the position in this solution or -1 if not created by a move.
+	 */
+	public int getMoveTo() {
+		return to;
+	}
+
+	/**
+	 * Gets the solution this solution was created from by a move. The parent
+	 * is released once this solution becomes the parent of another move.
+	 *
+	 * @return the parent or null.
+	 */
+	public Solution getParent() {
+		return parent;
 	}
 
 	/**
@@ -74,7 +309,51 @@ public class Solution {
 	 * @return the position.
 	 */
 	public int getPosition(final Event event) {
-		return positions.get(event);
+		return getPosition(dataset.getId(event));
+	}
+
+	/**
+	 * Gets the position of the event with the specified id.
+	 *
+	 * @param id
+	 *            the event id.
+	 * @return the position.
+	 */
+	public int getPosition(final int id) {
+		Index i = index;
+		if (i != null) {
+			return i.positions[id];
+		}
+		Solution p = parent;
+		if (p == null) {
+			return index().positions[id];
+		}
+		int position = p.getPosition(id);
+		if (position == from) {
+			return to;
+		} else if ((from < to) && (position > from) && (position <= to)) {
+			return position - 1;
+		} else if ((from > to) && (position >= to) && (position < from)) {
+			return position + 1;
+		} else {
+			return position;
+		}
+	}
+
+	/**
+	 * Creates a new solution with the event at one position moved to another
+	 * position, shifting the events in between. The new solution only records
+	 * the move until it is used as the parent of another move.
+	 *
+	 * @param from
+	 *            the current position of the event.
+	 * @param to
+	 *            the new position of the event.
+	 * @return the new solution.
+	 */
+	public Solution move(final int from, final int to) {
+		index();
+		return new Solution(this, from, to);
 	}
 
 	/**
@@ -98,4 +377,18 @@ public class Solution {
 		}
 		this.score = score;
 	}
+
+	/**
+	 * Gets the number of events in this solution.
+	 *
+	 * @return the number of events.
+	 */
+	public int size() {
+		Index i = index;
+		if (i != null) {
+			return i.order.length;
+		}
+		Solution p = parent;
+		return (p == null) ? index().order.length : p.size();
+	}
 }
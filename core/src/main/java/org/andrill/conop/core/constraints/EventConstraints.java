@@ -1,7 +1,16 @@
 package org.andrill.conop.core.constraints;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.andrill.conop.core.AbstractConfigurable;
 import org.andrill.conop.core.Configuration;
@@ -10,15 +19,22 @@ import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Location;
 import org.andrill.conop.core.Observation;
 import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.solver.SolverContext;
+import org.andrill.conop.core.solver.ThreadBudget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
  * Ensures all event constraints are satisfied.
  *
+ * The constraints are compiled into arrays of event ids. A candidate that is a
+ * single move from a valid solution is only checked against the constraints of
+ * the moved event.
+ *
  * @author Josh Reed (jareed@andrill.org)
  */
 public class EventConstraints extends AbstractConfigurable implements Constraints {
@@ -26,15 +42,32 @@ public class EventConstraints extends AbstractConfigurable implements Constraint
 	private static final boolean DEFAULT_TAXA = true;
 	private static final boolean DEFAULT_AGES = true;
 	private static final boolean DEFAULT_INFER = false;
+	private static final boolean DEFAULT_REDUCE = true;
 
 	protected class Constraint {
 		Event before;
 		Event after;
+		int beforeId;
+		int afterId;
+
+		Constraint(final Dataset dataset, final Event before, final Event after) {
+			this.before = before;
+			this.after = after;
+			beforeId = dataset.getId(before);
+			afterId = dataset.getId(after);
+		}
+	}
+
+	/**
+	 * The result of checking a solution.
+	 */
+	private static final class Checked {
+		final Solution solution;
+		final boolean valid;
 
-		boolean check(final Solution test) {
-			int i1 = test.getPosition(before);
-			int i2 = test.getPosition(after);
-			return (i1 < i2);
+		Checked(final Solution solution, final boolean valid) {
+			this.solution = solution;
+			this.valid = valid;
 		}
 	}
 
@@ -44,12 +77,18 @@ public class EventConstraints extends AbstractConfigurable implements Constraint
 	protected boolean ages = DEFAULT_AGES;
 	protected boolean infer = DEFAULT_INFER;
 	protected int support = DEFAULT_SUPPORT;
+	protected boolean reduce = DEFAULT_REDUCE;
+	protected volatile int[][] predecessors;
+	protected int[][] successors;
+	protected int[] befores;
+	protected int[] afters;
+	protected volatile Checked checked = null;
 
 	protected void calculateConstraints(final Dataset dataset) {
-		constraints = Sets.newConcurrentHashSet();
+		constraints = Sets.newLinkedHashSet();
 
 		if (taxa) {
-			calculateTaxaConstraints(dataset.getEvents());
+			calculateTaxaConstraints(dataset);
 		}
 
 		if (ages) {
@@ -61,18 +100,20 @@ public class EventConstraints extends AbstractConfigurable implements Constraint
 		}
 
 		log.info("Configured {} constraints", constraints.size());
+
+		if (reduce) {
+			reduceConstraints(dataset);
+		}
 	}
 
-	protected void calculateTaxaConstraints(final Set<Event> events) {
+	protected void calculateTaxaConstraints(final Dataset dataset) {
+		Set<Event> events = dataset.getEvents();
 		for (Event e : events) {
 			if (e.getName().endsWith("LAD")) {
 				String fad = e.getName().replace("LAD", "FAD");
 				for (Event f : events) {
 					if (fad.equalsIgnoreCase(f.getName())) {
-						Constraint c = new Constraint();
-						c.before = e;
-						c.after = f;
-						constraints.add(c);
+						constraints.add(new Constraint(dataset, e, f));
 						log.debug("Configuring new constraint for '{}' before '{}'", e, f);
 					}
 				}
@@ -92,33 +133,203 @@ public class EventConstraints extends AbstractConfigurable implements Constraint
 		calculateInferredConstraints(dataset, ages);
 	}
 
-	protected void calculateInferredConstraints(Dataset dataset, List<Event> events) {
-		for (Event before : events) {
-			for (Event after : events) {
-				int support = 0;
-
-				for (Location l : dataset.getLocations()) {
-					Observation o1 = l.getObservation(before);
-					Observation o2 = l.getObservation(after);
-					if (o1 != null && o2 != null) {
-						if (o1.getLevel().compareTo(o2.getLevel()) < 0) {
-							support = -1;
-							break;
-						} else if (o1.getLevel().compareTo(o2.getLevel()) > 0 && support >= 0) {
-							support++;
-						}
+	protected void calculateInferredConstraints(final Dataset dataset, final List<Event> events) {
+		// the rank of the level of each event in each location, or -1 if the
+		// event was not observed there
+		List<Location> locations = dataset.getLocations().asList();
+		final int[][] ranks = new int[events.size()][locations.size()];
+		for (int l = 0; l < locations.size(); l++) {
+			Location location = locations.get(l);
+			Observation[] observations = new Observation[events.size()];
+			Map<BigDecimal, Integer> levels = Maps.newTreeMap();
+			for (int i = 0; i < events.size(); i++) {
+				observations[i] = location.getObservation(events.get(i));
+				if (observations[i] != null) {
+					levels.put(observations[i].getLevel(), 0);
+				}
+			}
+			int rank = 0;
+			for (Map.Entry<BigDecimal, Integer> e : levels.entrySet()) {
+				e.setValue(rank++);
+			}
+			for (int i = 0; i < events.size(); i++) {
+				ranks[i][l] = (observations[i] == null) ? -1 : levels.get(observations[i].getLevel());
+			}
+		}
+
+		// find the supported pairs of each event in parallel
+		List<Callable<int[]>> tasks = Lists.newArrayListWithCapacity(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			final int before = i;
+			tasks.add(new Callable<int[]>() {
+				@Override
+				public int[] call() throws Exception {
+					return supported(ranks, before);
+				}
+			});
+		}
+		// the calling thread waits on the pool, so it can use the calling
+		// thread plus whatever the solver left of the thread budget
+		ThreadBudget budget = (context == null) ? null : context.get(ThreadBudget.class);
+		int reserved = 0;
+		int threads;
+		if (budget == null) {
+			threads = Math.min(ThreadBudget.available(), events.size());
+		} else {
+			reserved = budget.reserve(events.size() - 1);
+			threads = 1 + reserved;
+		}
+		List<int[]> results = Lists.newArrayListWithCapacity(events.size());
+		if (threads > 1) {
+			log.debug("Inferring constraints with '{}' threads", threads);
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<int[]> f : pool.invokeAll(tasks)) {
+					results.add(f.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while inferring constraints", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Unable to infer constraints", e.getCause());
+			} finally {
+				pool.shutdown();
+				if (budget != null) {
+					budget.release(reserved);
+				}
+			}
+		} else {
+			for (int i = 0; i < events.size(); i++) {
+				results.add(supported(ranks, i));
+			}
+		}
+
+		// add the constraints in order
+		for (int i = 0; i < results.size(); i++) {
+			Event before = events.get(i);
+			for (int j : results.get(i)) {
+				Event after = events.get(j);
+				constraints.add(new Constraint(dataset, before, after));
+				log.debug("Configuring new constraint for '{}' before '{}'", before, after);
+			}
+		}
+	}
+
+	/**
+	 * Finds the events that an event is supported to come before: it is above
+	 * them in at least the required number of locations and below them in
+	 * none.
+	 *
+	 * @param ranks
+	 *            the level ranks of the events in each location.
+	 * @param before
+	 *            the event.
+	 * @return the supported events.
+	 */
+	private int[] supported(final int[][] ranks, final int before) {
+		int[] found = new int[ranks.length];
+		int count = 0;
+		int[] b = ranks[before];
+		for (int after = 0; after < ranks.length; after++) {
+			if (after == before) {
+				continue;
+			}
+			int[] a = ranks[after];
+			int support = 0;
+			for (int l = 0; l < b.length; l++) {
+				if ((b[l] >= 0) && (a[l] >= 0)) {
+					if (b[l] < a[l]) {
+						support = -1;
+						break;
+					} else if (b[l] > a[l]) {
+						support++;
 					}
 				}
+			}
+			if (support >= this.support) {
+				found[count++] = after;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Removes the constraints implied by others, e.g. A before C when A is
+	 * before B and B before C. This keeps the same valid solutions with fewer
+	 * constraints to check. The constraints are kept as they are if they
+	 * contain a cycle.
+	 *
+	 * @param dataset
+	 *            the dataset.
+	 */
+	protected void reduceConstraints(final Dataset dataset) {
+		int n = dataset.getEvents().size();
+		BitSet[] edges = new BitSet[n];
+		int[] waiting = new int[n];
+		for (int i = 0; i < n; i++) {
+			edges[i] = new BitSet(n);
+		}
+		for (Constraint c : constraints) {
+			if (!edges[c.beforeId].get(c.afterId)) {
+				edges[c.beforeId].set(c.afterId);
+				waiting[c.afterId]++;
+			}
+		}
+
+		// order the events topologically
+		int[] order = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (waiting[i] == 0) {
+				order[count++] = i;
+			}
+		}
+		for (int k = 0; k < count; k++) {
+			BitSet next = edges[order[k]];
+			for (int j = next.nextSetBit(0); j >= 0; j = next.nextSetBit(j + 1)) {
+				if (--waiting[j] == 0) {
+					order[count++] = j;
+				}
+			}
+		}
+		if (count < n) {
+			log.warn("The constraints contain a cycle, so no solution can satisfy them");
+			return;
+		}
+		int[] rank = new int[n];
+		for (int k = 0; k < n; k++) {
+			rank[order[k]] = k;
+		}
 
-				if (!before.equals(after) && support >= this.support) {
-					Constraint c = new Constraint();
-					c.before = before;
-					c.after = after;
-					constraints.add(c);
-					log.debug("Configuring new constraint for '{}' before '{}' (support: {})", before, after, support);
+		// the events reachable from each event, latest first so the
+		// successors of an event are done before it, keeping only the edges
+		// to successors that are not reachable through an earlier successor
+		BitSet[] reachable = new BitSet[n];
+		Set<Constraint> reduced = Sets.newLinkedHashSet();
+		int[] successors = new int[n];
+		for (int k = n - 1; k >= 0; k--) {
+			int before = order[k];
+			BitSet next = edges[before];
+			int m = 0;
+			for (int j = next.nextSetBit(0); j >= 0; j = next.nextSetBit(j + 1)) {
+				successors[m++] = rank[j];
+			}
+			Arrays.sort(successors, 0, m);
+
+			BitSet covered = new BitSet(n);
+			for (int s = 0; s < m; s++) {
+				int after = order[successors[s]];
+				if (!covered.get(after)) {
+					reduced.add(new Constraint(dataset, dataset.getEvent(before), dataset.getEvent(after)));
+					covered.set(after);
+					covered.or(reachable[after]);
 				}
 			}
+			reachable[before] = covered;
 		}
+
+		log.info("Reduced {} constraints to {}", constraints.size(), reduced.size());
+		constraints = reduced;
 	}
 
 	@Override
@@ -136,22 +347,162 @@ public class EventConstraints extends AbstractConfigurable implements Constraint
 
 		support = config.get("support", DEFAULT_SUPPORT);
 		log.debug("Configuring support as '{}'", support);
+
+		reduce = config.get("reduce", DEFAULT_REDUCE);
+		log.debug("Configuring transitive reduction as '{}'", reduce);
 	}
 
-	@Override
-	public boolean isValid(final Solution solution) {
+	/**
+	 * Gets the events that must come before each event.
+	 *
+	 * @return the ids of the predecessors, indexed by event id.
+	 */
+	public int[][] getPredecessors() {
+		compile();
+		return predecessors;
+	}
+
+	/**
+	 * Gets the events that must come after each event.
+	 *
+	 * @return the ids of the successors, indexed by event id.
+	 */
+	public int[][] getSuccessors() {
+		compile();
+		return successors;
+	}
+
+	/**
+	 * Calculates the constraints on first use and compiles them into arrays of
+	 * event ids, once even if several threads check solutions.
+	 */
+	protected void compile() {
+		if (predecessors == null) {
+			synchronized (this) {
+				if (predecessors == null) {
+					compile(context.getDataset());
+				}
+			}
+		}
+	}
+
+	private void compile(final Dataset dataset) {
 		if (constraints == null) {
-			calculateConstraints(context.getDataset());
+			calculateConstraints(dataset);
 		}
 
+		int n = dataset.getEvents().size();
+		int[] b = new int[constraints.size()];
+		int[] a = new int[constraints.size()];
+		int[] before = new int[n];
+		int[] after = new int[n];
+		int k = 0;
 		for (Constraint c : constraints) {
-			if (!c.check(solution)) {
+			b[k] = c.beforeId;
+			a[k] = c.afterId;
+			before[c.afterId]++;
+			after[c.beforeId]++;
+			k++;
+		}
+		int[][] p = new int[n][];
+		int[][] s = new int[n][];
+		for (int i = 0; i < n; i++) {
+			p[i] = new int[before[i]];
+			s[i] = new int[after[i]];
+		}
+		for (k = 0; k < b.length; k++) {
+			p[a[k]][--before[a[k]]] = b[k];
+			s[b[k]][--after[b[k]]] = a[k];
+		}
+		befores = b;
+		afters = a;
+		successors = s;
+
+		// published last so the other arrays are visible once it is set
+		predecessors = p;
+	}
+
+	/**
+	 * Checks all constraints.
+	 *
+	 * @param solution
+	 *            the solution, indexed by the dataset.
+	 * @return true if all constraints are satisfied.
+	 */
+	protected boolean checkAll(final Solution solution) {
+		for (int k = 0; k < befores.length; k++) {
+			if (solution.getPosition(befores[k]) >= solution.getPosition(afters[k])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the constraints of a single event.
+	 *
+	 * @param solution
+	 *            the solution, indexed by the dataset.
+	 * @param id
+	 *            the event id.
+	 * @return true if the constraints of the event are satisfied.
+	 */
+	protected boolean checkEvent(final Solution solution, final int id) {
+		int position = solution.getPosition(id);
+		for (int p : predecessors[id]) {
+			if (solution.getPosition(p) >= position) {
+				return false;
+			}
+		}
+		for (int s : successors[id]) {
+			if (solution.getPosition(s) <= position) {
 				return false;
 			}
 		}
 		return true;
 	}
 
+	@Override
+	public boolean isValid(final Solution solution) {
+		compile();
+		Solution indexed = solution.forDataset(context.getDataset());
+
+		// a single move from a valid solution can only break the constraints
+		// of the moved event
+		Solution parent = indexed.getParent();
+		if ((parent != null) && isValidParent(parent)) {
+			return checkEvent(indexed, indexed.getId(indexed.getMoveTo()));
+		}
+		return checkAll(indexed);
+	}
+
+	/**
+	 * Checks a parent solution, remembering the result because the candidates
+	 * are usually moves from the same current solution.
+	 *
+	 * @param parent
+	 *            the parent solution.
+	 * @return true if the parent satisfies all constraints.
+	 */
+	protected boolean isValidParent(final Solution parent) {
+		Checked last = checked;
+		if ((last == null) || (last.solution != parent)) {
+			last = new Checked(parent, checkAll(parent));
+			checked = last;
+		}
+		return last.valid;
+	}
+
+	@Override
+	public void setContext(final SolverContext context) {
+		super.setContext(context);
+
+		// publish ourselves so mutators can propose valid moves
+		if (context != null) {
+			context.put(EventConstraints.class, this);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "Event Constraints";
@@ -0,0 +1,214 @@
+package org.andrill.conop.core.constraints;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Solution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event constraints that penalize violations instead of rejecting them.
+ *
+ * Every candidate is valid, so the search can pass through solutions that
+ * violate constraints. The solvers add {@link #getPenalty(Solution, double)}
+ * to the score of each candidate, scaled by the initial temperature of the
+ * schedule so that a violation is as easy to accept at any temperature as a
+ * penalty increase of the weight is at the start. The scale is fixed for a run
+ * so the scores stay comparable, and violations become less likely to be
+ * accepted as the search cools. Only feasible solutions replace a feasible
+ * best solution. Like the validity check, the violations of a single move are
+ * counted from those of its parent. An infeasible best solution can be
+ * {@link #repair(Solution) repaired} at the end of a run.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class SoftConstraints extends EventConstraints {
+	private static final double DEFAULT_WEIGHT = 1.0;
+
+	/**
+	 * The violations counted for a solution.
+	 */
+	private static final class Counted {
+		final Solution solution;
+		final int violations;
+
+		Counted(final Solution solution, final int violations) {
+			this.solution = solution;
+			this.violations = violations;
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(SoftConstraints.class);
+	protected double weight = DEFAULT_WEIGHT;
+	protected volatile Counted counted = null;
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		weight = config.get("weight", DEFAULT_WEIGHT);
+		log.debug("Configuring violation weight as '{}'", weight);
+	}
+
+	/**
+	 * Counts all violated constraints.
+	 *
+	 * @param solution
+	 *            the solution, indexed by the dataset.
+	 * @return the number of violated constraints.
+	 */
+	protected int countAll(final Solution solution) {
+		int count = 0;
+		for (int k = 0; k < befores.length; k++) {
+			if (solution.getPosition(befores[k]) >= solution.getPosition(afters[k])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the violated constraints of a single event.
+	 *
+	 * @param solution
+	 *            the solution, indexed by the dataset.
+	 * @param id
+	 *            the event id.
+	 * @return the number of violated constraints of the event.
+	 */
+	protected int countEvent(final Solution solution, final int id) {
+		int count = 0;
+		int position = solution.getPosition(id);
+		for (int p : predecessors[id]) {
+			if (solution.getPosition(p) >= position) {
+				count++;
+			}
+		}
+		for (int s : successors[id]) {
+			if (solution.getPosition(s) <= position) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the penalty for the violated constraints of a solution, which is
+	 * the weight per violation times the temperature.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @param temp
+	 *            the temperature.
+	 * @return the penalty.
+	 */
+	public double getPenalty(final Solution solution, final double temp) {
+		return weight * getViolations(solution) * temp;
+	}
+
+	/**
+	 * Counts the violated constraints of a solution.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the number of violated constraints.
+	 */
+	public int getViolations(final Solution solution) {
+		compile();
+		Solution indexed = solution.forDataset(context.getDataset());
+
+		// a single move only changes the violations of the moved event
+		Solution parent = indexed.getParent();
+		if (parent != null) {
+			int id = indexed.getId(indexed.getMoveTo());
+			return (getParentViolations(parent) - countEvent(parent, id)) + countEvent(indexed, id);
+		}
+		return countAll(indexed);
+	}
+
+	/**
+	 * Counts the violations of a parent solution, remembering the result
+	 * because the candidates are usually moves from the same current solution.
+	 *
+	 * @param parent
+	 *            the parent solution.
+	 * @return the number of violated constraints.
+	 */
+	protected int getParentViolations(final Solution parent) {
+		Counted last = counted;
+		if ((last == null) || (last.solution != parent)) {
+			last = new Counted(parent, countAll(parent));
+			counted = last;
+		}
+		return last.violations;
+	}
+
+	/**
+	 * Checks whether a solution satisfies all constraints.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return true if no constraint is violated.
+	 */
+	public boolean isFeasible(final Solution solution) {
+		return getViolations(solution) == 0;
+	}
+
+	/**
+	 * Repairs a solution so it satisfies the constraints by placing each event
+	 * after its predecessors and otherwise keeping the order of the solution.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the repaired solution, or null if the constraints are cyclic.
+	 */
+	public Solution repair(final Solution solution) {
+		compile();
+		final Solution indexed = solution.forDataset(context.getDataset());
+		int size = indexed.size();
+
+		// place the ready event that comes first in the solution
+		int[] waiting = new int[size];
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>(size, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer a, final Integer b) {
+				return Integer.compare(indexed.getPosition(a), indexed.getPosition(b));
+			}
+		});
+		for (int id = 0; id < size; id++) {
+			waiting[id] = predecessors[id].length;
+			if (waiting[id] == 0) {
+				ready.add(id);
+			}
+		}
+		int[] order = new int[size];
+		int placed = 0;
+		while (!ready.isEmpty()) {
+			int id = ready.poll();
+			order[placed++] = id;
+			for (int s : successors[id]) {
+				if (--waiting[s] == 0) {
+					ready.add(s);
+				}
+			}
+		}
+		if (placed < size) {
+			log.warn("Unable to repair solution: the constraints are cyclic");
+			return null;
+		}
+		return new Solution(context.getDataset(), order);
+	}
+
+	@Override
+	public boolean isValid(final Solution solution) {
+		// violations are penalized instead
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "Soft Constraints";
+	}
+}
@@ -1,15 +1,14 @@
 package org.andrill.conop.core.internal;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
-import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Solution;
 import org.andrill.conop.core.listeners.Listener;
 import org.andrill.conop.core.mutators.AbstractMutator;
 
-import com.google.common.collect.Lists;
-
 /**
  * Randomly move an event with no consideration to constraints. The possible
  * distance an event can move reduces as the temperature of the simulation
@@ -28,21 +27,39 @@ public class AnnealingMutator extends AbstractMutator implements Listener {
 
 	@Override
 	protected Solution internalMutate(final Solution solution) {
-		List<Event> events = Lists.newArrayList(solution.getEvents());
+		int size = solution.size();
 
 		// pick a random event and move it to a new position
-		int cur = random.nextInt(events.size());
+		int cur = random.nextInt(size);
 		int pos = random.nextInt(delta) + 1;
 		if (random.nextInt(2) == 1) {
-			pos = Math.min(events.size() - 1, cur + pos);
+			pos = Math.min(size - 1, cur + pos);
 		} else {
 			pos = Math.max(0, cur - pos);
 		}
 
 		// build a new solution
-		Event e = events.remove(cur);
-		events.add(pos, e);
-		return new Solution(events);
+		return solution.move(cur, pos);
+	}
+
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		super.restore(in);
+		delta = in.readInt();
+		temp = in.readDouble();
+		random.setSeed(in.readLong());
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		super.save(out);
+		out.writeInt(delta);
+		out.writeDouble(temp);
+
+		// reseed so the saved seed continues the same sequence
+		long seed = random.nextLong();
+		random.setSeed(seed);
+		out.writeLong(seed);
 	}
 
 	@Override
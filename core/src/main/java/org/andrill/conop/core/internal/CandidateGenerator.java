@@ -0,0 +1,36 @@
+package org.andrill.conop.core.internal;
+
+import org.andrill.conop.core.Solution;
+
+/**
+ * Generates candidate solutions from the current solution for a solver.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public interface CandidateGenerator {
+
+	/**
+	 * Gets the next candidate solution.
+	 *
+	 * @return the candidate or null if the generator was stopped.
+	 */
+	Solution getNext();
+
+	/**
+	 * Stops the generator.
+	 */
+	void kill();
+
+	/**
+	 * Sets the current solution that candidates are generated from.
+	 *
+	 * @param current
+	 *            the current solution.
+	 */
+	void setCurrent(Solution current);
+
+	/**
+	 * Starts the generator.
+	 */
+	void start();
+}
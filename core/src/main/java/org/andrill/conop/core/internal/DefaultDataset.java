@@ -24,6 +24,7 @@ public class DefaultDataset implements Dataset {
 	protected final ImmutableSet<Event> events;
 	protected final ImmutableSet<Location> locations;
 	protected final Map<Event, Integer> ids = new IdentityOptimizedMap<Event, Integer>();
+	protected final Event[] table;
 
 	/**
 	 * Create a new dataset from the specified locations.
@@ -42,12 +43,24 @@ public class DefaultDataset implements Dataset {
 		events = b.build();
 
 		// assign ids to events
+		table = new Event[events.size()];
 		int id = 0;
 		for (Event e : events) {
+			table[id] = e;
 			ids.put(e, id++);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.andrill.conop.core.Dataset#getEvent(int)
+	 */
+	@Override
+	public Event getEvent(final int id) {
+		return table[id];
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
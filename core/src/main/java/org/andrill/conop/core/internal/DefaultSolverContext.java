@@ -40,6 +40,17 @@ public class DefaultSolverContext implements SolverContext {
 		}
 	}
 
+	@Override
+	public Solution replaceBest(Solution best) {
+		try {
+			bestLock.writeLock().lock();
+			this.best = best;
+			return best;
+		} finally {
+			bestLock.writeLock().unlock();
+		}
+	}
+
 	@Override
 	public Dataset getDataset() {
 		return get(Dataset.class);
@@ -0,0 +1,72 @@
+package org.andrill.conop.core.internal;
+
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.Constraints;
+import org.andrill.conop.core.mutators.Mutator;
+import org.andrill.conop.core.solver.SolverContext;
+import org.andrill.conop.core.solver.SolverStats;
+
+/**
+ * Generates candidate solutions on the calling thread, so there is no handoff
+ * between threads. Mutates the current solution until the candidate satisfies
+ * the constraints, up to a maximum number of attempts. The current solution
+ * must be set before the first candidate is generated.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class InlineGenerator implements CandidateGenerator {
+	private static final int MAX_ATTEMPTS = 100;
+
+	protected volatile Solution current = null;
+	protected final Mutator mutator;
+	protected final Constraints constraints;
+	protected final SolverContext context;
+	protected final SolverStats stats;
+
+	public InlineGenerator(final SolverContext context, final Mutator mutator, final Constraints constraints) {
+		this(context, mutator, constraints, context.get(SolverStats.class));
+	}
+
+	public InlineGenerator(final SolverContext context, final Mutator mutator, final Constraints constraints,
+			final SolverStats stats) {
+		this.context = context;
+		this.mutator = mutator;
+		this.constraints = constraints;
+		this.stats = stats;
+	}
+
+	@Override
+	public Solution getNext() {
+		Solution next = context.getNext();
+		if (next != null) {
+			setCurrent(next);
+			stats.total++;
+			return next;
+		}
+
+		Solution from = current;
+		next = mutator.mutate(from);
+		stats.total++;
+		for (int i = 1; (i < MAX_ATTEMPTS) && !constraints.isValid(next); i++) {
+			stats.skipped++;
+			next = mutator.mutate(from);
+			stats.total++;
+		}
+		return next;
+	}
+
+	@Override
+	public void kill() {
+		// nothing to stop
+	}
+
+	@Override
+	public void setCurrent(final Solution current) {
+		this.current = current;
+	}
+
+	@Override
+	public void start() {
+		// nothing to start
+	}
+}
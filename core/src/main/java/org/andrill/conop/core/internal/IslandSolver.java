@@ -0,0 +1,116 @@
+package org.andrill.conop.core.internal;
+
+import java.util.List;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.solver.AbstractParallelSolver;
+import org.andrill.conop.core.solver.SolverConfiguration;
+import org.andrill.conop.core.solver.ThreadBudget;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An island model solver.
+ *
+ * Runs a number of independent annealing chains (islands), each with its own
+ * schedule, mutator and constraints. If the penalty can be forked, the islands
+ * share its precomputed tables. Every few steps, each island receives the best
+ * solution of its neighbour on a ring and adopts it if it is better than its
+ * current solution. The best solution over all islands is reported to the
+ * solver context as usual.
+ *
+ * An island stops once its schedule is finished, and the solver stops once all
+ * islands have stopped.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class IslandSolver extends AbstractParallelSolver {
+	private static final int DEFAULT_ISLANDS = ThreadBudget.available();
+	private static final int DEFAULT_MIGRATION = 1000;
+
+	protected int count = DEFAULT_ISLANDS;
+	protected int migration = DEFAULT_MIGRATION;
+	protected long migrated = 0;
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		count = Math.max(1, config.get("islands", DEFAULT_ISLANDS));
+		log.debug("Configuring islands as '{}'", count);
+
+		migration = Math.max(1, config.get("migration", DEFAULT_MIGRATION));
+		log.debug("Configuring steps between migrations as '{}'", migration);
+	}
+
+	@Override
+	protected void initialize(final SolverConfiguration config) {
+		createChains(config, count, true);
+	}
+
+	/**
+	 * Migrate the best solution of each island to its neighbour on the ring.
+	 *
+	 * @param active
+	 *            the active islands.
+	 */
+	protected void migrate(final List<Chain> active) {
+		if (active.size() < 2) {
+			return;
+		}
+
+		// take all migrants before adopting any
+		List<Solution> migrants = Lists.newArrayList();
+		for (Chain island : active) {
+			migrants.add(island.getLocalBest());
+		}
+		for (int i = 0; i < active.size(); i++) {
+			Chain island = active.get(i);
+			Solution migrant = migrants.get((i + active.size() - 1) % active.size());
+			if (migrant.getScore() < island.getCurrent().getScore()) {
+				island.setCurrent(migrant);
+				migrated++;
+			}
+		}
+	}
+
+	@Override
+	protected void solve(final Solution initial) {
+		startChains(initial);
+
+		try {
+			List<Chain> active = Lists.newArrayList(chains);
+			while (!active.isEmpty()) {
+				runChains(active, migration);
+
+				// retire the islands whose schedule has finished
+				double temp = 0;
+				for (int i = active.size() - 1; i >= 0; i--) {
+					if (active.get(i).getTemperature() <= 0) {
+						active.remove(i);
+					} else {
+						temp = Math.max(temp, active.get(i).getTemperature());
+					}
+				}
+				stats.temperature = temp;
+
+				migrate(active);
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+		repair();
+
+		// clean up
+		stopped(getBest());
+	}
+
+	@Override
+	protected void stopped(final Solution solution) {
+		if (!stopped) {
+			log.info("Migrated {} solutions between islands", migrated);
+		}
+		super.stopped(solution);
+	}
+}
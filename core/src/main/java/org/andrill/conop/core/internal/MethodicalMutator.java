@@ -1,18 +1,13 @@
 package org.andrill.conop.core.internal;
 
-import java.util.List;
-import java.util.Map;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import org.andrill.conop.core.Dataset;
-import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Solution;
 import org.andrill.conop.core.mutators.AbstractMutator;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-
 public class MethodicalMutator extends AbstractMutator {
-	protected Map<Integer, Event> cache;
 	protected int current = 0;
 	protected int cycle = 0;
 
@@ -20,36 +15,35 @@ public class MethodicalMutator extends AbstractMutator {
 		super("Methodical Mutator");
 	}
 
-	protected void initCache(final Dataset dataset) {
-		cache = Maps.newHashMap();
-		for (Event e : dataset.getEvents()) {
-			cache.put(dataset.getId(e), e);
-		}
-	}
-
 	@Override
 	protected Solution internalMutate(final Solution solution) {
-		if (cache == null) {
-			initCache(context.getDataset());
-		}
+		int size = solution.size();
 
-		// remove the event
-		Event target = cache.get(current);
-		List<Event> events = Lists.newArrayList(solution.getEvents());
-		int position = events.indexOf(target);
-		events.remove(target);
+		// find the event
+		int position = solution.getPosition(current);
 
 		// increment event position
-		position = (position + 1) % cache.size();
-		cycle = (cycle + 1) % cache.size();
+		int next = (position + 1) % size;
+		cycle = (cycle + 1) % size;
 		if (cycle == 0) {
-			current = (current + 1) % cache.size();
+			current = (current + 1) % size;
 		}
 
-		// add the event back in
-		events.add(position, target);
+		// move the event
+		return solution.move(position, next);
+	}
 
-		return new Solution(events);
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		super.restore(in);
+		current = in.readInt();
+		cycle = in.readInt();
 	}
 
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		super.save(out);
+		out.writeInt(current);
+		out.writeInt(cycle);
+	}
 }
@@ -1,10 +1,16 @@
 package org.andrill.conop.core.internal;
 
-import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.LockSupport;
 
+import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Solution;
 import org.andrill.conop.core.constraints.Constraints;
 import org.andrill.conop.core.listeners.Listener;
@@ -14,45 +20,148 @@ import org.andrill.conop.core.schedules.Schedule;
 import org.andrill.conop.core.solver.AbstractSolver;
 import org.andrill.conop.core.solver.SolverConfiguration;
 import org.andrill.conop.core.solver.SolverStats;
+import org.andrill.conop.core.util.RingBuffer;
 import org.andrill.conop.core.util.TimerUtils;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * A solver that scores candidate solutions on a number of scorer threads.
+ *
+ * By default each scorer thread generates and validates its own candidates
+ * from a shared snapshot of the current solution with its own mutator and
+ * constraints, and hands the scored candidates to the solver thread through
+ * its own lock-free {@link RingBuffer}. Candidates may be neighbours of an
+ * earlier current solution. In speculative mode, each round scores one neighbour of
+ * the current solution per scorer in parallel, then applies the acceptance
+ * test in order and discards the rest of the round after an acceptance. This
+ * is the same chain as the sequential algorithm, and little work is wasted at
+ * low temperatures where most candidates are rejected.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
 public class QueueSolver extends AbstractSolver {
+	private static final int DEFAULT_BATCH = 1;
+	private static final boolean DEFAULT_SPECULATIVE = false;
+	private static final int MAX_ATTEMPTS = 100;
+	private static final int SPINS = 16;
+	private static final long PARK_NANOS = 20000;
+
+	private static class ScoreTask implements Callable<Void> {
+		private final Penalty objective;
+		private final Solution solution;
+		private final double soft;
+
+		private ScoreTask(final Penalty objective, final Solution solution, final double soft) {
+			this.objective = objective;
+			this.solution = solution;
+			this.soft = soft;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			solution.setScore(objective.score(solution) + soft);
+			return null;
+		}
+	}
+
 	private class ScorerThread extends Thread {
 		private final Penalty objective;
+		private final Constraints constraints;
+		private final InlineGenerator generator;
+		private final RingBuffer<Solution> results;
+		private final SolverStats counts = new SolverStats();
+		private volatile boolean alive = true;
+		private volatile long busy = 0;
+		private volatile Throwable failure = null;
 
-		private ScorerThread(final Penalty objective) {
+		private ScorerThread(final Penalty objective, final Mutator mutator, final Constraints constraints) {
 			this.objective = objective;
+			this.constraints = constraints;
+			generator = new InlineGenerator(context, mutator, constraints, counts);
+			results = new RingBuffer<Solution>(batch + 1);
+			setDaemon(true);
 		}
 
 		@Override
 		public void run() {
-			while (!stopped) {
-				try {
-					Solution next = generator.getNext();
-					next.setScore(objective.score(next));
-					complete.put(next);
-				} catch (InterruptedException e) {
-					// ignore
+			try {
+				List<Solution> block = Lists.newArrayListWithCapacity(batch);
+				while (alive) {
+					// generate and score a block from the latest current solution
+					long start = System.nanoTime();
+					block.clear();
+					generator.setCurrent(snapshot);
+					for (int i = 0; i < batch; i++) {
+						block.add(generator.getNext());
+					}
+					score(objective, block, constraints);
+					busy += System.nanoTime() - start;
+
+					// hand them to the solver thread
+					for (Solution next : block) {
+						for (int idle = 0; !results.offer(next); idle++) {
+							if (!alive) {
+								return;
+							}
+							backoff(idle);
+						}
+					}
 				}
+			} catch (Throwable t) {
+				// the solver thread rethrows it
+				failure = t;
 			}
 		}
 	}
 
-	protected LinkedBlockingQueue<Solution> complete;
-	protected Set<ScorerThread> scorers;
+	protected List<Penalty> penalties;
+	protected List<ScorerThread> scorers;
+	protected volatile Solution snapshot;
+	protected ExecutorService pool;
 	protected Constraints constraints;
 	protected Mutator mutator;
 	protected Schedule schedule;
-	protected SolutionGenerator generator;
 	protected Random random = new Random();
 	protected SolverStats stats = new SolverStats();
+	protected int batch = DEFAULT_BATCH;
+	protected boolean speculative = DEFAULT_SPECULATIVE;
+	protected long discarded = 0;
+
+	/**
+	 * Waits before retrying a hand-off between the scorers and the solver
+	 * thread, yielding at first and then parking, so waiting threads do not
+	 * compete with the scorers for processors.
+	 *
+	 * @param idle
+	 *            the number of failed attempts so far.
+	 */
+	private static void backoff(final int idle) {
+		if (idle < SPINS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
 
 	@Override
-	protected void initialize(final SolverConfiguration config) {
-		int procs = Runtime.getRuntime().availableProcessors();
-		log.debug("Configuring queue size as '{}'", procs);
+	public void configure(final Configuration config) {
+		super.configure(config);
 
-		complete = new LinkedBlockingQueue<>(procs + 1);
+		batch = Math.max(1, config.get("batch", DEFAULT_BATCH));
+		log.debug("Configuring batch size as '{}'", batch);
+
+		speculative = config.get("speculative", DEFAULT_SPECULATIVE);
+		log.debug("Configuring speculative scoring as '{}'", speculative);
+	}
+
+	@Override
+	protected void initialize(final SolverConfiguration config) {
+		// the scorers use the thread budget left after the solver thread
+		budget.reserve(1);
+		int procs = Math.max(1, budget.reserve(budget.getFree()));
+		log.debug("Configuring scorers as '{}'", procs);
 
 		// save our important components
 		constraints = config.getConstraints();
@@ -63,6 +172,7 @@ public class QueueSolver extends AbstractSolver {
 
 		schedule = config.getSchedule();
 		log.info("Using schedule '{}'", schedule);
+		softScale = schedule.getInitial();
 
 		setContext(constraints, mutator, schedule);
 
@@ -70,7 +180,8 @@ public class QueueSolver extends AbstractSolver {
 		if (constraints instanceof Listener) {
 			addListener((Listener) constraints);
 		}
-		if (mutator instanceof Listener) {
+		if (speculative && (mutator instanceof Listener)) {
+			// otherwise the scorers generate the candidates with their own
 			addListener((Listener) mutator);
 		}
 		if (schedule instanceof Listener) {
@@ -78,17 +189,35 @@ public class QueueSolver extends AbstractSolver {
 		}
 
 		// create our scorer threads
-		scorers = new HashSet<>();
+		penalties = Lists.newArrayList();
+		scorers = Lists.newArrayList();
 		for (int i = 0; i < procs; i++) {
 			Penalty penalty = config.getPenalty();
 			if (i == 0) {
 				log.info("Using penalty '{}'", penalty);
 			}
 			setContext(penalty);
-			scorers.add(new ScorerThread(penalty));
+			penalties.add(penalty);
 			if (penalty instanceof Listener) {
 				addListener((Listener) penalty);
 			}
+
+			// each scorer generates its own candidates
+			if (!speculative) {
+				Mutator m = config.getMutator();
+				Constraints c = config.getConstraints();
+				setContext(m, c);
+				if (m instanceof Listener) {
+					addListener((Listener) m);
+				}
+				if (c instanceof Listener) {
+					addListener((Listener) c);
+				}
+				scorers.add(new ScorerThread(penalty, m, c));
+			}
+		}
+		if (speculative) {
+			pool = MoreExecutors.getExitingExecutorService((ThreadPoolExecutor) Executors.newFixedThreadPool(procs));
 		}
 
 		// other listeners
@@ -98,35 +227,78 @@ public class QueueSolver extends AbstractSolver {
 		context.put(SolverStats.class, stats);
 	}
 
+	/**
+	 * Gets a neighbour of the current solution, preferring one that satisfies
+	 * the constraints.
+	 *
+	 * @param current
+	 *            the current solution.
+	 * @return the neighbour.
+	 */
+	protected Solution neighbour(final Solution current) {
+		Solution next = context.getNext();
+		if (next != null) {
+			return next;
+		}
+
+		next = mutator.mutate(current);
+		stats.total++;
+		for (int i = 1; (i < MAX_ATTEMPTS) && !constraints.isValid(next); i++) {
+			stats.skipped++;
+			next = mutator.mutate(current);
+			stats.total++;
+		}
+		return next;
+	}
+
 	@Override
 	protected void solve(final Solution initial) {
+		if (speculative) {
+			solveSpeculative(initial);
+			return;
+		}
+
 		Solution current = initial;
 
 		// get our initial temperature and score
 		double temp = schedule.getInitial();
 		initial.setScore(Double.MAX_VALUE);
 
-		generator = new SolutionGenerator(context, mutator, constraints, 20);
-		generator.setCurrent(initial);
-		generator.start();
+		snapshot = initial;
 
 		started(initial);
 
 		// start all scorer threads
+		long start = System.nanoTime();
 		for (ScorerThread thread : scorers) {
 			thread.start();
 		}
 
 		try {
 			// anneal
+			int cursor = 0;
 			while (temp > 0) {
-				Solution next = complete.take();
+				// take the next scored candidate from the scorers in turn
+				Solution next = null;
+				for (int idle = 0; next == null; idle++) {
+					for (int i = 0; (i < scorers.size()) && (next == null); i++) {
+						cursor = (cursor + 1) % scorers.size();
+						next = scorers.get(cursor).results.poll();
+					}
+					if (next == null) {
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+						checkScorers();
+						backoff(idle);
+					}
+				}
 				stats.scored++;
 
 				// check if new best
-				if (updateBest(next)) {
+				if (updateBest(next, constraints)) {
 					stats.best = getBest().getScore();
-					stats.constraints = constraints.isValid(getBest());
+					stats.constraints = isFeasible(constraints, getBest());
 				}
 
 				// notify listeners
@@ -139,20 +311,166 @@ public class QueueSolver extends AbstractSolver {
 				if ((next.getScore() < current.getScore())
 						|| (Math.exp(-(next.getScore() - current.getScore()) / temp) > random.nextDouble())) {
 					current = next;
-					generator.setCurrent(current);
+					snapshot = current;
 				}
 
 				// get our next temperature
 				temp = schedule.next(current);
 				stats.temperature = temp;
 				stats.elapsed = TimerUtils.getCounter();
+				updateStats(System.nanoTime() - start);
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+		repair();
+
+		// clean up
+		stopped(getBest());
+	}
+
+	/**
+	 * Stops the scorers and repairs the best solution if it violates soft
+	 * constraints.
+	 */
+	protected void repair() {
+		try {
+			for (ScorerThread thread : scorers) {
+				thread.alive = false;
+			}
+			for (ScorerThread thread : scorers) {
+				thread.join();
+			}
+			if (repairBest(penalties.get(0), constraints)) {
+				stats.best = getBest().getScore();
+				stats.constraints = isFeasible(constraints, getBest());
 			}
 		} catch (Exception e) {
 			handleError(e);
 		}
+	}
 
-		// kill our generator thread
-		generator.kill();
+	/**
+	 * Checks that all scorers are still running.
+	 *
+	 * @throws Exception
+	 *             the failure of a scorer, if any.
+	 */
+	protected void checkScorers() throws Exception {
+		for (ScorerThread scorer : scorers) {
+			Throwable failure = scorer.failure;
+			if (failure instanceof Exception) {
+				throw (Exception) failure;
+			} else if (failure != null) {
+				throw new RuntimeException("Scorer failed", failure);
+			} else if (!scorer.isAlive()) {
+				throw new IllegalStateException("Scorer stopped unexpectedly");
+			}
+		}
+	}
+
+	/**
+	 * Updates the candidate counts and the scorer utilization from the
+	 * scorers.
+	 *
+	 * @param elapsed
+	 *            the nanoseconds since the scorers were started.
+	 */
+	protected void updateStats(final long elapsed) {
+		long total = 0;
+		long skipped = 0;
+		long busy = 0;
+		for (ScorerThread scorer : scorers) {
+			total += scorer.counts.total;
+			skipped += scorer.counts.skipped;
+			busy += scorer.busy;
+		}
+		stats.total = total;
+		stats.skipped = skipped;
+		if (elapsed > 0) {
+			stats.utilization = Math.min(1.0, (double) busy / (elapsed * scorers.size()));
+		}
+	}
+
+	/**
+	 * Anneals by scoring neighbours of the current solution in parallel and
+	 * accepting them in order.
+	 *
+	 * @param initial
+	 *            the initial solution.
+	 */
+	protected void solveSpeculative(final Solution initial) {
+		Solution current = initial;
+
+		// get our initial temperature and score
+		double temp = schedule.getInitial();
+		initial.setScore(penalties.get(0).score(initial) + getSoftPenalty(constraints, initial));
+
+		started(initial);
+
+		try {
+			// anneal
+			List<Solution> block = Lists.newArrayListWithCapacity(penalties.size());
+			List<ScoreTask> tasks = Lists.newArrayListWithCapacity(penalties.size());
+			while (temp > 0) {
+				// score a neighbour of the current solution on each scorer
+				block.clear();
+				tasks.clear();
+				for (Penalty penalty : penalties) {
+					Solution next = neighbour(current);
+					block.add(next);
+					tasks.add(new ScoreTask(penalty, next, getSoftPenalty(constraints, next)));
+				}
+				for (Future<Void> f : pool.invokeAll(tasks)) {
+					f.get();
+				}
+
+				// test the neighbours in order until one is accepted
+				for (int i = 0; i < block.size(); i++) {
+					Solution next = block.get(i);
+					stats.scored++;
+
+					// check if new best
+					if (updateBest(next, constraints)) {
+						stats.best = getBest().getScore();
+						stats.constraints = isFeasible(constraints, getBest());
+					}
+
+					// notify listeners
+					for (Listener l : listeners) {
+						l.tried(temp, next, getBest());
+					}
+
+					// accept the new solution if it is better than the current
+					// or randomly based on score and temperature
+					boolean accepted = (next.getScore() < current.getScore())
+							|| (Math.exp(-(next.getScore() - current.getScore()) / temp) > random.nextDouble());
+					if (accepted) {
+						current = next;
+					}
+
+					// get our next temperature
+					temp = schedule.next(current);
+					stats.temperature = temp;
+					stats.elapsed = TimerUtils.getCounter();
+
+					// the rest of the round are neighbours of the old solution
+					if (accepted || (temp <= 0)) {
+						discarded += block.size() - i - 1;
+						break;
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				handleError((Exception) e.getCause());
+			} else {
+				handleError(e);
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+		repair();
 
 		// clean up
 		stopped(getBest());
@@ -161,7 +479,16 @@ public class QueueSolver extends AbstractSolver {
 	@Override
 	protected void stopped(final Solution solution) {
 		for (ScorerThread thread : scorers) {
-			thread.interrupt();
+			thread.alive = false;
+		}
+		if (!stopped && !scorers.isEmpty() && (stats.utilization >= 0)) {
+			log.info("Scorers were busy {}% of the time", Math.round(stats.utilization * 100));
+		}
+		if (pool != null) {
+			if (!stopped) {
+				log.info("Discarded {} speculative candidates", discarded);
+			}
+			pool.shutdownNow();
 		}
 
 		super.stopped(solution);
@@ -0,0 +1,64 @@
+package org.andrill.conop.core.internal;
+
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.Constraints;
+import org.andrill.conop.core.mutators.Mutator;
+import org.andrill.conop.core.solver.SolverContext;
+import org.andrill.conop.core.util.RingBuffer;
+
+/**
+ * Generates candidate solutions on its own thread and hands them to a single
+ * consumer through a preallocated, lock-free {@link RingBuffer}. Both sides
+ * spin while the ring is full or empty.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class RingGenerator extends Thread implements CandidateGenerator {
+	protected final InlineGenerator source;
+	protected final RingBuffer<Solution> ring;
+	protected volatile boolean alive = true;
+
+	public RingGenerator(final SolverContext context, final Mutator mutator, final Constraints constraints,
+			final int count) {
+		super("RingGenerator");
+		setDaemon(true);
+		source = new InlineGenerator(context, mutator, constraints);
+		ring = new RingBuffer<Solution>(count);
+	}
+
+	@Override
+	public Solution getNext() {
+		Solution next = ring.poll();
+		while (next == null) {
+			if (!alive) {
+				return null;
+			}
+			Thread.yield();
+			next = ring.poll();
+		}
+		return next;
+	}
+
+	@Override
+	public void kill() {
+		alive = false;
+	}
+
+	@Override
+	public void run() {
+		while (alive) {
+			Solution next = source.getNext();
+			while (!ring.offer(next)) {
+				if (!alive) {
+					return;
+				}
+				Thread.yield();
+			}
+		}
+	}
+
+	@Override
+	public void setCurrent(final Solution current) {
+		source.setCurrent(current);
+	}
+}
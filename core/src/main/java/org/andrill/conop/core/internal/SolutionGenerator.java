@@ -8,15 +8,21 @@ import org.andrill.conop.core.mutators.Mutator;
 import org.andrill.conop.core.solver.SolverContext;
 import org.andrill.conop.core.solver.SolverStats;
 
-public class SolutionGenerator extends Thread {
-	protected Solution current = null;
+/**
+ * Generates candidate solutions on its own thread and hands them to the
+ * consumers through blocking queues.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class SolutionGenerator extends Thread implements CandidateGenerator {
+	protected volatile Solution current = null;
 	protected final Mutator mutator;
 	protected final Constraints constraints;
 	protected final SolverContext context;
 	protected final LinkedBlockingQueue<Solution> valid;
 	protected final LinkedBlockingQueue<Solution> invalid;
 	protected final SolverStats stats;
-	protected boolean alive = true;
+	protected volatile boolean alive = true;
 
 	public SolutionGenerator(SolverContext context, Mutator mutator, Constraints constraints, int count) {
 		this.context = context;
@@ -30,10 +36,12 @@ public class SolutionGenerator extends Thread {
 		stats = context.get(SolverStats.class);
 	}
 
+	@Override
 	public void setCurrent(Solution current) {
 		this.current = current;
 	}
 
+	@Override
 	public Solution getNext() {
 		try {
 			if (valid.isEmpty()) {
@@ -46,8 +54,10 @@ public class SolutionGenerator extends Thread {
 		}
 	}
 
+	@Override
 	public void kill() {
 		alive = false;
+		interrupt();
 	}
 
 	@Override
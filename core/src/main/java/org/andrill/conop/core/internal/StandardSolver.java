@@ -1,28 +1,315 @@
 package org.andrill.conop.core.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Random;
 
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
 import org.andrill.conop.core.Solution;
 import org.andrill.conop.core.constraints.Constraints;
 import org.andrill.conop.core.listeners.Listener;
+import org.andrill.conop.core.listeners.PositionsMatrix;
 import org.andrill.conop.core.mutators.Mutator;
+import org.andrill.conop.core.penalties.BatchPenalty;
+import org.andrill.conop.core.penalties.BoundedPenalty;
 import org.andrill.conop.core.penalties.Penalty;
 import org.andrill.conop.core.schedules.Schedule;
 import org.andrill.conop.core.solver.AbstractSolver;
+import org.andrill.conop.core.solver.Checkpoint;
 import org.andrill.conop.core.solver.SolverConfiguration;
 import org.andrill.conop.core.solver.SolverStats;
 import org.andrill.conop.core.util.TimerUtils;
 
+import com.google.common.collect.Lists;
+
 public class StandardSolver extends AbstractSolver {
+	private static final int DEFAULT_BATCH = 1;
+	private static final boolean DEFAULT_BOUNDED = true;
+	private static final String DEFAULT_GENERATOR = "inline";
+	private static final int QUEUE_SIZE = 20;
+	private static final int DEFAULT_CHECKPOINT_FREQUENCY = 600;
+	private static final boolean DEFAULT_POLISH = false;
+	private static final double POLISH_TOLERANCE = 1e-9;
+
 	protected Constraints constraints;
 	protected Mutator mutator;
 	protected Penalty penalty;
 	protected Schedule schedule;
 	protected Random random = new Random();
 	protected SolverStats stats = new SolverStats();
+	protected int batch = DEFAULT_BATCH;
+	protected boolean bounded = DEFAULT_BOUNDED;
+	protected String strategy = DEFAULT_GENERATOR;
+	protected File checkpoint = null;
+	protected int checkpointFrequency = DEFAULT_CHECKPOINT_FREQUENCY;
+	protected File resume = null;
+	protected long elapsed = 0;
+	protected long discarded = 0;
+	protected boolean polish = DEFAULT_POLISH;
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		batch = Math.max(1, config.get("batch", DEFAULT_BATCH));
+		log.debug("Configuring batch size as '{}'", batch);
+
+		bounded = config.get("bounded", DEFAULT_BOUNDED);
+		log.debug("Configuring bounded scoring as '{}'", bounded);
+
+		strategy = config.get("generator", DEFAULT_GENERATOR);
+		if (!"inline".equals(strategy) && !"ring".equals(strategy) && !"queue".equals(strategy)) {
+			throw new IllegalArgumentException("Unknown generator '" + strategy
+					+ "', expected 'inline', 'ring' or 'queue'");
+		}
+		log.debug("Configuring candidate generator as '{}'", strategy);
+
+		// checkpoints are only exact with the inline generator, see
+		// supportsCheckpoints()
+		String file = config.get("checkpoint", (String) null);
+		if (file != null) {
+			checkpoint = new File(file);
+			log.debug("Configuring checkpoint file as '{}'", checkpoint);
+
+			checkpointFrequency = config.get("checkpointFrequency", DEFAULT_CHECKPOINT_FREQUENCY);
+			log.debug("Configuring checkpoint frequency as '{} seconds'", checkpointFrequency);
+		}
+
+		file = config.get("resume", (String) null);
+		if (file != null) {
+			resume = new File(file);
+			log.debug("Configuring resume from checkpoint '{}'", resume);
+		}
+		if (((checkpoint != null) || (resume != null)) && !supportsCheckpoints()) {
+			throw new IllegalArgumentException("Checkpoints require the 'inline' generator, not '" + strategy + "'");
+		}
+
+		polish = config.get("polish", DEFAULT_POLISH);
+		log.debug("Configuring polish as '{}'", polish);
+	}
+
+	/**
+	 * Checks whether this solver can write and resume checkpoints. Only the
+	 * inline generator supports them: the other generators call the mutator
+	 * on their own thread while its state is saved, and the candidates they
+	 * have queued are not saved, so the resumed run would not continue
+	 * exactly.
+	 *
+	 * @return true if the generator is 'inline'.
+	 */
+	public boolean supportsCheckpoints() {
+		return "inline".equals(strategy);
+	}
+
+	/**
+	 * Computes a signature of the dataset so a checkpoint is only resumed
+	 * against the dataset it was written for.
+	 */
+	protected int signature(final Dataset dataset) {
+		int hash = dataset.getEvents().size();
+		for (int i = 0; i < dataset.getEvents().size(); i++) {
+			hash = (31 * hash) + dataset.getEvent(i).getName().hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * Captures the state of the solver and its components, then writes it to
+	 * the checkpoint file in the background.
+	 *
+	 * @param current
+	 *            the current solution.
+	 * @param temp
+	 *            the current temperature.
+	 * @throws IOException
+	 *             if the state could not be captured.
+	 */
+	protected void writeCheckpoint(final Solution current, final double temp) throws IOException {
+		final Checkpoint state = new Checkpoint();
+
+		// the solver state
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(signature(context.getDataset()));
+		out.writeDouble(temp);
+		out.writeLong(stats.elapsed);
+		Checkpoint.writeSolution(out, current);
+		Checkpoint.writeSolution(out, getBest());
+
+		// reseed so the saved seed continues the same sequence
+		long seed = random.nextLong();
+		random.setSeed(seed);
+		out.writeLong(seed);
+		out.flush();
+		state.put("solver", bytes.toByteArray());
+
+		// the component state
+		state.save("schedule", schedule);
+		state.save("mutator", mutator);
+		state.save("constraints", constraints);
+		state.save("penalty", penalty);
+		state.save("stats", stats);
+		state.save("positions", context.get(PositionsMatrix.class));
+
+		budget.getBackground().submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					state.write(checkpoint);
+					log.debug("Wrote checkpoint to '{}'", checkpoint);
+				} catch (IOException e) {
+					log.error("Unable to write checkpoint", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Restores the state of the solver and its components from the checkpoint
+	 * to resume. The temperature is restored into the stats.
+	 *
+	 * @return the current solution.
+	 * @throws IOException
+	 *             if the checkpoint could not be read or does not match the
+	 *             dataset.
+	 */
+	protected Solution readCheckpoint() throws IOException {
+		Checkpoint state = Checkpoint.read(resume);
+		Dataset dataset = context.getDataset();
+
+		// the solver state
+		DataInput in = state.get("solver");
+		if (in == null) {
+			throw new IOException("Checkpoint has no solver state: " + resume);
+		}
+		if (in.readInt() != signature(dataset)) {
+			throw new IOException("Checkpoint was written for a different dataset: " + resume);
+		}
+		double temp = in.readDouble();
+		elapsed = in.readLong();
+		Solution current = Checkpoint.readSolution(in, dataset);
+		context.setBest(Checkpoint.readSolution(in, dataset));
+		feasibleBest = isFeasible(constraints, getBest());
+		random.setSeed(in.readLong());
+
+		// the component state
+		state.restore("schedule", schedule);
+		state.restore("mutator", mutator);
+		state.restore("constraints", constraints);
+		state.restore("penalty", penalty);
+		state.restore("stats", stats);
+		stats.temperature = temp;
+		if (state.get("positions") != null) {
+			PositionsMatrix matrix = new PositionsMatrix(dataset);
+			state.restore("positions", matrix);
+			context.put(PositionsMatrix.class, matrix);
+		}
+
+		log.info("Resuming from checkpoint '{}' at {}C with score {}", resume, temp, current.getScore());
+		return current;
+	}
+
+	/**
+	 * Creates the configured candidate generator.
+	 *
+	 * @return the generator.
+	 */
+	protected CandidateGenerator createGenerator() {
+		if ("inline".equals(strategy)) {
+			return new InlineGenerator(context, mutator, constraints);
+		} else if ("ring".equals(strategy)) {
+			return new RingGenerator(context, mutator, constraints, QUEUE_SIZE);
+		} else {
+			return new SolutionGenerator(context, mutator, constraints, QUEUE_SIZE);
+		}
+	}
+
+	/**
+	 * Polishes a solution with a local search over single event insertions.
+	 * Each pass tries every other position for every event and applies the
+	 * best improving insertion of the event. All insertions of an event are
+	 * single moves from the same solution, so they are scored as one block,
+	 * which an incremental {@link BatchPenalty} scores against a shared base in
+	 * parallel. The search stops once a pass finds no improving insertion,
+	 * i.e. at a local optimum.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the polished solution.
+	 * @throws InterruptedException
+	 *             if the solver was interrupted.
+	 */
+	protected Solution polish(final Solution solution) throws InterruptedException {
+		Solution current = solution;
+		int size = current.size();
+		boolean valid = isFeasible(constraints, current);
+		List<Solution> block = Lists.newArrayListWithCapacity(size);
+		long moves = 0;
+		long candidates = 0;
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			for (int id = 0; id < size; id++) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				// every insertion of the event that keeps the solution valid
+				int from = current.getPosition(id);
+				block.clear();
+				for (int to = 0; to < size; to++) {
+					if (to != from) {
+						Solution next = current.move(from, to);
+						if (!valid || isFeasible(constraints, next)) {
+							block.add(next);
+						}
+					}
+				}
+				if (block.isEmpty()) {
+					continue;
+				}
+				score(penalty, block, constraints);
+				candidates += block.size();
+				stats.scored += block.size();
+
+				// apply the best insertion if it improves the solution
+				Solution better = current;
+				double threshold = current.getScore() - (POLISH_TOLERANCE * Math.max(1, current.getScore()));
+				for (Solution next : block) {
+					if ((next.getScore() < threshold) && (next.getScore() < better.getScore())) {
+						better = next;
+					}
+				}
+				if (better != current) {
+					current = better;
+					moves++;
+					improved = true;
+					if (updateBest(current, constraints)) {
+						stats.best = current.getScore();
+						stats.constraints = isFeasible(constraints, current);
+					}
+					for (Listener l : listeners) {
+						l.tried(0, current, getBest());
+					}
+				}
+			}
+		}
+
+		log.info("Polished the best solution from {} to {} with {} moves ({} candidates)", solution.getScore(),
+				current.getScore(), moves, candidates);
+		return current;
+	}
 
 	@Override
 	protected void initialize(final SolverConfiguration config) {
+		// reserve our own thread and the generator thread, if any
+		budget.reserve("inline".equals(strategy) ? 1 : 2);
+
 		constraints = config.getConstraints();
 		log.info("Using constraints '{}'", constraints);
 
@@ -34,6 +321,7 @@ public class StandardSolver extends AbstractSolver {
 
 		schedule = config.getSchedule();
 		log.info("Using schedule '{}'", schedule);
+		softScale = schedule.getInitial();
 
 		setContext(constraints, mutator, penalty, schedule);
 
@@ -61,47 +349,100 @@ public class StandardSolver extends AbstractSolver {
 
 		// get our initial temperature and score
 		double temp = schedule.getInitial();
-		initial.setScore(penalty.score(initial));
+		if (resume == null) {
+			initial.setScore(penalty.score(initial) + getSoftPenalty(constraints, initial));
+
+			// the initial solution is the best until a candidate has a full score
+			if (updateBest(initial, constraints)) {
+				stats.best = initial.getScore();
+				stats.constraints = isFeasible(constraints, initial);
+			}
+		} else {
+			try {
+				current = readCheckpoint();
+				temp = stats.temperature;
+			} catch (IOException e) {
+				handleError(e);
+			}
+		}
 
-		SolutionGenerator generator = new SolutionGenerator(context, mutator, constraints, 20);
-		generator.setCurrent(initial);
+		CandidateGenerator generator = createGenerator();
+		generator.setCurrent(current);
 		generator.start();
+		long start = System.nanoTime();
+		long nextCheckpoint = TimerUtils.getCounter() + checkpointFrequency;
 
 		// initialize the listeners
-		started(initial);
+		started(current);
 
 		try {
 			// anneal
+			List<Solution> block = Lists.newArrayListWithCapacity(batch);
+			double[] thresholds = new double[batch];
 			while (temp > 0) {
-				// get a new potential solution
-				Solution next = generator.getNext();
-
-				// score this solution
-				next.setScore(penalty.score(next));
-				stats.scored++;
-
-				// save as best if the penalty is less
-				if (updateBest(next)) {
-					stats.best = getBest().getScore();
-					stats.constraints = constraints.isValid(getBest());
+				// get a block of new potential solutions and draw their
+				// acceptance thresholds up front, so a single candidate can stop
+				// scoring once it would be rejected
+				block.clear();
+				for (int i = 0; i < batch; i++) {
+					block.add(generator.getNext());
+					thresholds[i] = random.nextDouble();
 				}
 
-				// notify listeners
-				for (Listener l : listeners) {
-					l.tried(temp, next, getBest());
+				// score the solutions
+				boolean aborted = false;
+				if (bounded && (batch == 1) && (penalty instanceof BoundedPenalty)) {
+					double bound = current.getScore() - (temp * Math.log(thresholds[0]));
+					aborted = score((BoundedPenalty) penalty, block.get(0), constraints, bound);
+					if (aborted) {
+						stats.aborted++;
+					}
+				} else {
+					score(penalty, block, constraints);
 				}
 
-				// accept the new solution if it is better than the current
-				// or randomly based on score and temperature
-				if ((next.getScore() < current.getScore())
-						|| (Math.exp(-(next.getScore() - current.getScore()) / temp) > random.nextDouble())) {
-					current = next;
-					generator.setCurrent(current);
+				for (int i = 0; i < block.size(); i++) {
+					Solution next = block.get(i);
+					stats.scored++;
+
+					// save as best if the penalty is less; an aborted solution
+					// could still replace an infeasible best with soft
+					// constraints
+					if (!aborted && updateBest(next, constraints)) {
+						stats.best = getBest().getScore();
+						stats.constraints = isFeasible(constraints, getBest());
+					}
+
+					// notify listeners
+					for (Listener l : listeners) {
+						l.tried(temp, next, getBest());
+					}
+
+					// accept the new solution if it is better than the current
+					// or randomly based on score and temperature
+					boolean accepted = (next.getScore() < current.getScore())
+							|| (Math.exp(-(next.getScore() - current.getScore()) / temp) > thresholds[i]);
+					if (accepted) {
+						current = next;
+						generator.setCurrent(current);
+					}
+
+					temp = schedule.next(current);
+					stats.temperature = temp;
+					stats.elapsed = elapsed + TimerUtils.getCounter();
+
+					// the rest of the block are neighbours of the old solution
+					if (accepted || (temp <= 0)) {
+						discarded += block.size() - i - 1;
+						break;
+					}
 				}
 
-				temp = schedule.next(current);
-				stats.temperature = temp;
-				stats.elapsed = TimerUtils.getCounter();
+				// checkpoint between blocks so no drawn threshold is lost
+				if ((checkpoint != null) && (TimerUtils.getCounter() >= nextCheckpoint)) {
+					writeCheckpoint(current, temp);
+					nextCheckpoint = TimerUtils.getCounter() + checkpointFrequency;
+				}
 			}
 		} catch (Exception e) {
 			handleError(e);
@@ -109,6 +450,32 @@ public class StandardSolver extends AbstractSolver {
 
 		// kill our generator thread
 		generator.kill();
+		double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		log.info("Generated {} candidates with the '{}' generator ({} per second)", stats.total, strategy,
+				Math.round(stats.total / seconds));
+		if (batch > 1) {
+			log.info("Discarded {} candidates after an acceptance", discarded);
+		}
+
+		// repair the best solution if it violates soft constraints
+		try {
+			if (repairBest(penalty, constraints)) {
+				stats.best = getBest().getScore();
+				stats.constraints = isFeasible(constraints, getBest());
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+
+		// descend to a local optimum from the best solution
+		if (polish && (getBest() != null)) {
+			try {
+				polish(getBest());
+				stats.elapsed = elapsed + TimerUtils.getCounter();
+			} catch (Exception e) {
+				handleError(e);
+			}
+		}
 
 		// clean up
 		stopped(getBest());
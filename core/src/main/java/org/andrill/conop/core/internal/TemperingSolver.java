@@ -0,0 +1,130 @@
+package org.andrill.conop.core.internal;
+
+import java.util.Random;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.listeners.Listener;
+import org.andrill.conop.core.schedules.Schedule;
+import org.andrill.conop.core.solver.AbstractParallelSolver;
+import org.andrill.conop.core.solver.SolverConfiguration;
+import org.andrill.conop.core.solver.ThreadBudget;
+
+/**
+ * A parallel tempering (replica exchange) solver.
+ *
+ * Runs a number of replicas, each with its own mutator and constraints, on a
+ * geometric ladder of temperatures. The coldest replica runs at the
+ * temperature of the schedule and each hotter replica at a constant ratio
+ * above its neighbour. The replicas run a round of steps in parallel, then
+ * neighbouring replicas attempt to exchange their solutions with the usual
+ * Metropolis criterion, alternating between even and odd pairs.
+ *
+ * The schedule is advanced and the listeners are notified once per replica
+ * after each round.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class TemperingSolver extends AbstractParallelSolver {
+	private static final int DEFAULT_REPLICAS = ThreadBudget.available();
+	private static final double DEFAULT_RATIO = 1.5;
+	private static final int DEFAULT_EXCHANGE = 100;
+
+	protected int count = DEFAULT_REPLICAS;
+	protected double ratio = DEFAULT_RATIO;
+	protected int exchange = DEFAULT_EXCHANGE;
+	protected Schedule schedule;
+	protected Random random = new Random();
+	protected long attempted = 0;
+	protected long exchanged = 0;
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		count = Math.max(1, config.get("replicas", DEFAULT_REPLICAS));
+		log.debug("Configuring replicas as '{}'", count);
+
+		ratio = config.get("ratio", DEFAULT_RATIO);
+		log.debug("Configuring temperature ratio as '{}'", ratio);
+
+		exchange = Math.max(1, config.get("exchange", DEFAULT_EXCHANGE));
+		log.debug("Configuring steps between exchanges as '{}'", exchange);
+	}
+
+	/**
+	 * Attempt to exchange the solutions of two neighbouring replicas.
+	 *
+	 * @param colder
+	 *            the colder replica.
+	 * @param hotter
+	 *            the hotter replica.
+	 */
+	protected void exchange(final Chain colder, final Chain hotter) {
+		attempted++;
+		double delta = (colder.getCurrent().getScore() - hotter.getCurrent().getScore())
+				* ((1 / colder.getTemperature()) - (1 / hotter.getTemperature()));
+		if ((delta >= 0) || (Math.exp(delta) > random.nextDouble())) {
+			Solution swap = colder.getCurrent();
+			colder.setCurrent(hotter.getCurrent());
+			hotter.setCurrent(swap);
+			exchanged++;
+		}
+	}
+
+	@Override
+	protected void initialize(final SolverConfiguration config) {
+		schedule = config.getSchedule();
+		log.info("Using schedule '{}'", schedule);
+		softScale = schedule.getInitial();
+		setContext(schedule);
+		if (schedule instanceof Listener) {
+			addListener((Listener) schedule);
+		}
+
+		// create our replicas
+		createChains(config, count, false);
+	}
+
+	@Override
+	protected void solve(final Solution initial) {
+		// get our initial temperature and score
+		double temp = schedule.getInitial();
+		startChains(initial);
+
+		try {
+			int round = 0;
+			while (temp > 0) {
+				// run a round of each replica on the temperature ladder
+				for (int i = 0; i < chains.size(); i++) {
+					chains.get(i).setTemperature(temp * Math.pow(ratio, i));
+				}
+				runChains(chains, exchange);
+
+				// attempt exchanges between neighbours
+				for (int i = round % 2; (i + 1) < chains.size(); i += 2) {
+					exchange(chains.get(i), chains.get(i + 1));
+				}
+				round++;
+
+				// cool the ladder
+				temp = schedule.next(chains.get(0).getCurrent());
+				stats.temperature = temp;
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+		repair();
+
+		// clean up
+		stopped(getBest());
+	}
+
+	@Override
+	protected void stopped(final Solution solution) {
+		if (!stopped) {
+			log.info("Accepted {} of {} replica exchanges", exchanged, attempted);
+		}
+		super.stopped(solution);
+	}
+}
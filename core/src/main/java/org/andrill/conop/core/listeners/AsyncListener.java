@@ -6,17 +6,20 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 import org.andrill.conop.core.AbstractConfigurable;
 import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.solver.ThreadBudget;
 
 import com.google.common.util.concurrent.MoreExecutors;
 
 /**
- * An abstract base class for listeners that can dataset asynchronously.
+ * An abstract base class for listeners that can dataset asynchronously. During
+ * a solver run, the listeners share the background thread of the
+ * {@link ThreadBudget} rather than competing with the solver for processors.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
 public abstract class AsyncListener extends AbstractConfigurable implements Listener {
 	protected static ExecutorService pool = MoreExecutors.getExitingExecutorService((ThreadPoolExecutor) Executors
-			.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+			.newFixedThreadPool(ThreadBudget.available()));
 
 	protected long iteration = 0;
 
@@ -63,7 +66,9 @@ public abstract class AsyncListener extends AbstractConfigurable implements List
 	public final void tried(final double temp, final Solution current, final Solution best) {
 		iteration++;
 		if (test(temp, iteration, current, best)) {
-			pool.submit(new Runnable() {
+			ThreadBudget budget = (context == null) ? null : context.<ThreadBudget> get(ThreadBudget.class);
+			ExecutorService executor = (budget == null) ? pool : budget.getBackground();
+			executor.submit(new Runnable() {
 				@Override
 				public void run() {
 					AsyncListener.this.run(temp, iteration, current, best);
@@ -29,7 +29,9 @@ public interface Listener {
 	void stopped(Solution solution);
 
 	/**
-	 * Called when a solution is tried.
+	 * Called when a solution is tried. A solution whose scoring stopped early
+	 * because it would be rejected has a score of
+	 * {@link Double#POSITIVE_INFINITY}.
 	 * 
 	 * @param temp
 	 *            the temperature.
@@ -8,8 +8,12 @@ public class PositionsListener extends AbstractListener {
 	@Override
 	public void tried(double temp, Solution current, Solution best) {
 		if (matrix == null) {
-			matrix = new PositionsMatrix(context.getDataset());
-			context.put(PositionsMatrix.class, matrix);
+			// use the matrix restored from a checkpoint if there is one
+			matrix = context.get(PositionsMatrix.class);
+			if (matrix == null) {
+				matrix = new PositionsMatrix(context.getDataset());
+				context.put(PositionsMatrix.class, matrix);
+			}
 		}
 
 		matrix.update(current);
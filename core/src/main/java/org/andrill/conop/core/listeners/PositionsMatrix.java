@@ -1,13 +1,17 @@
 package org.andrill.conop.core.listeners;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.andrill.conop.core.Checkpointable;
 import org.andrill.conop.core.Dataset;
 import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Solution;
 
-public class PositionsMatrix {
+public class PositionsMatrix implements Checkpointable {
 	protected double[][] positions;
 	protected Dataset dataset;
 	protected double best = Double.MAX_VALUE;
@@ -33,8 +37,9 @@ public class PositionsMatrix {
 
 				if (score <= best) {
 					best = score;
-					for (Event e : solution.getEvents()) {
-						positions[dataset.getId(e)][solution.getPosition(e)] = score;
+					Solution indexed = solution.forDataset(dataset);
+					for (int i = 0; i < indexed.size(); i++) {
+						positions[indexed.getId(i)][i] = score;
 					}
 				}
 
@@ -64,4 +69,41 @@ public class PositionsMatrix {
 	public int[] getRange(Event e) {
 		return getRange(e, best);
 	}
+
+	@Override
+	public void restore(DataInput in) throws IOException {
+		try {
+			lock.lock();
+
+			int size = in.readInt();
+			if (size != positions.length) {
+				throw new IOException("Checkpoint has " + size + " positions but the dataset has " + positions.length);
+			}
+			best = in.readDouble();
+			for (double[] row : positions) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] = in.readDouble();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void save(DataOutput out) throws IOException {
+		try {
+			lock.lock();
+
+			out.writeInt(positions.length);
+			out.writeDouble(best);
+			for (double[] row : positions) {
+				for (double d : row) {
+					out.writeDouble(d);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
 }
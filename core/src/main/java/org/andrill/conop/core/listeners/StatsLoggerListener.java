@@ -20,6 +20,9 @@ public class StatsLoggerListener extends PeriodicListener {
 					"Best: {} (constraints: {}) | Elapsed: {} min | Temperature: {} C | Scored: {}/{} | Throughput: {}/s",
 					D.format(stats.best), stats.constraints, I.format(stats.elapsed / 60), D.format(stats.temperature),
 					I.format(stats.scored), I.format(stats.total), I.format(stats.total / stats.elapsed));
+			if (stats.utilization >= 0) {
+				log.info("Scorer utilization: {}%", I.format(stats.utilization * 100));
+			}
 		}
 	}
 
@@ -1,5 +1,10 @@
 package org.andrill.conop.core.mutators;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.andrill.conop.core.Checkpointable;
 import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Solution;
 import org.andrill.conop.core.listeners.AbstractListener;
@@ -11,7 +16,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Josh Reed (jareed@andrill.org)
  */
-public abstract class AbstractMutator extends AbstractListener implements Mutator {
+public abstract class AbstractMutator extends AbstractListener implements Mutator, Checkpointable {
 	private static final long DEFAULT_RESET = -1l;
 
 	protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -43,6 +48,16 @@ public abstract class AbstractMutator extends AbstractListener implements Mutato
 		}
 	}
 
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		counter = in.readLong();
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		out.writeLong(counter);
+	}
+
 	@Override
 	public String toString() {
 		return name;
@@ -0,0 +1,84 @@
+package org.andrill.conop.core.mutators;
+
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.EventConstraints;
+
+/**
+ * Randomly moves an event within the window of positions allowed by the
+ * {@link EventConstraints}, i.e. after its latest predecessor and before its
+ * earliest successor in the current solution. If the current solution
+ * satisfies the constraints, every candidate does too. Without event
+ * constraints, events are moved like the {@link RandomMutator}.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ConstrainedMutator extends RandomMutator {
+	protected int[][] predecessors;
+	protected int[][] successors;
+	protected boolean resolved = false;
+
+	public ConstrainedMutator() {
+		super("Constrained Mutator");
+	}
+
+	@Override
+	public Solution internalMutate(final Solution solution) {
+		if (!resolved) {
+			resolve();
+		}
+		if (predecessors == null) {
+			return super.internalMutate(solution);
+		}
+
+		// pick a random event that can move, trying the others in turn if it
+		// is pinned in place, and a new position in its window
+		int size = solution.size();
+		int first = random.nextInt(size);
+		for (int attempt = 0; attempt < size; attempt++) {
+			int cur = (first + attempt) % size;
+			int id = solution.getId(cur);
+
+			// the window of positions that keep the event after its
+			// predecessors and before its successors once it has moved
+			int lo = 0;
+			for (int p : predecessors[id]) {
+				int pos = solution.getPosition(p);
+				lo = Math.max(lo, (pos < cur) ? pos + 1 : pos);
+			}
+			int hi = size - 1;
+			for (int s : successors[id]) {
+				int pos = solution.getPosition(s);
+				hi = Math.min(hi, (pos > cur) ? pos - 1 : pos);
+			}
+
+			int count = (hi - lo) + 1;
+			if ((cur >= lo) && (cur <= hi)) {
+				count--;
+			}
+			if (count > 0) {
+				int pos = lo + random.nextInt(count);
+				if ((pos >= cur) && (cur >= lo) && (cur <= hi)) {
+					pos++;
+				}
+				return solution.move(cur, pos);
+			}
+		}
+
+		// every event is pinned
+		return super.internalMutate(solution);
+	}
+
+	/**
+	 * Looks up the precedence relations of the event constraints.
+	 */
+	protected void resolve() {
+		resolved = true;
+		EventConstraints constraints = (context == null) ? null : context.<EventConstraints> get(EventConstraints.class);
+		if (constraints == null) {
+			log.info("No event constraints found, moving events randomly");
+		} else {
+			predecessors = constraints.getPredecessors();
+			successors = constraints.getSuccessors();
+		}
+	}
+}
@@ -0,0 +1,439 @@
+package org.andrill.conop.core.mutators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Event;
+import org.andrill.conop.core.Solution;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Mutates solutions with a portfolio of operators and adapts how often each
+ * operator is used to how well it works:
+ * <ul>
+ * <li>insertion - moves a random event to a new position</li>
+ * <li>swap - exchanges two random events</li>
+ * <li>block - moves a run of events to a new position</li>
+ * <li>reversal - reverses a run of events</li>
+ * <li>pair - moves the LAD and FAD of a taxon by the same distance</li>
+ * </ul>
+ *
+ * The mutator matches the candidates that the solver reports to
+ * {@link #tried(double, Solution, Solution)} with the operators that proposed
+ * them, and counts a candidate as accepted when it is mutated in turn. Every
+ * window of candidates, each operator is chosen in proportion to its accepted
+ * candidates plus its relative improvements of the score per event evaluated.
+ * Evaluating a candidate, i.e. checking and scoring it, dominates the cost of
+ * proposing it. Only insertions are single moves from their parent, which the
+ * constraints check by the moved event and the incremental penalties score by
+ * the positions between its old and new position, so an insertion costs the
+ * span of its move. The other operators build a new solution without a parent,
+ * which the constraints check in full and the incremental penalties compare
+ * with their base position by position, so they cost the number of events.
+ * Every operator keeps a minimum probability, and the counts are halved after
+ * each window so the portfolio follows the search as it cools.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class PortfolioMutator extends RandomMutator {
+	private static final int DEFAULT_WINDOW = 1000;
+	private static final double DEFAULT_MINIMUM = 0.05;
+	private static final int DEFAULT_SPAN = 8;
+	private static final int PENDING = 64;
+
+	protected static final String[] OPERATORS = { "insertion", "swap", "block", "reversal", "pair" };
+	protected static final int INSERTION = 0;
+	protected static final int SWAP = 1;
+	protected static final int BLOCK = 2;
+	protected static final int REVERSAL = 3;
+	protected static final int PAIR = 4;
+
+	protected int window = DEFAULT_WINDOW;
+	protected double minimum = DEFAULT_MINIMUM;
+	protected int span = DEFAULT_SPAN;
+
+	// the selection probabilities and what each operator achieved
+	protected double[] probabilities;
+	protected final double[] accepted = new double[OPERATORS.length];
+	protected final double[] gain = new double[OPERATORS.length];
+	protected final double[] cost = new double[OPERATORS.length];
+	protected long scored = 0;
+
+	// the recent candidates that are waiting for feedback
+	protected final Solution[] pending = new Solution[PENDING];
+	protected final int[] pendingOperator = new int[PENDING];
+	protected final int[] pendingCost = new int[PENDING];
+	protected final double[] pendingParent = new double[PENDING];
+	protected final boolean[] pendingScored = new boolean[PENDING];
+	protected int next = 0;
+
+	// the partner of each event in a LAD/FAD pair, or -1
+	protected Dataset paired = null;
+	protected int[] partners;
+	protected int[] pairs;
+
+	public PortfolioMutator() {
+		super("Portfolio Mutator");
+	}
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		window = Math.max(1, config.get("window", DEFAULT_WINDOW));
+		log.debug("Configuring adaptation window as '{} candidates'", window);
+
+		minimum = Math.max(0, Math.min(1.0 / OPERATORS.length, config.get("minimum", DEFAULT_MINIMUM)));
+		log.debug("Configuring minimum operator probability as '{}'", minimum);
+
+		span = Math.max(2, config.get("span", DEFAULT_SPAN));
+		log.debug("Configuring block span as '{} events'", span);
+	}
+
+	/**
+	 * Adapts the selection probabilities to the accepted candidates and score
+	 * improvements per event evaluated of each operator, then halves the
+	 * counts.
+	 */
+	protected void adapt() {
+		double[] value = new double[OPERATORS.length];
+		double total = 0;
+		int enabled = 0;
+		for (int op = 0; op < OPERATORS.length; op++) {
+			if (isEnabled(op)) {
+				enabled++;
+				if (cost[op] > 0) {
+					value[op] = (accepted[op] + gain[op]) / cost[op];
+					total += value[op];
+				}
+			}
+		}
+		for (int op = 0; op < OPERATORS.length; op++) {
+			if (!isEnabled(op)) {
+				probabilities[op] = 0;
+			} else if (total > 0) {
+				probabilities[op] = minimum + (((1 - (enabled * minimum)) * value[op]) / total);
+			} else {
+				probabilities[op] = 1.0 / enabled;
+			}
+			accepted[op] /= 2;
+			gain[op] /= 2;
+			cost[op] /= 2;
+		}
+	}
+
+	/**
+	 * Moves a run of events to a new position.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the new solution, which has no parent and is checked in full.
+	 */
+	protected Solution block(final Solution solution) {
+		int size = solution.size();
+		int length = 2 + random.nextInt(Math.min(span, size - 1) - 1);
+		int from = random.nextInt((size - length) + 1);
+		int to = random.nextInt(size - length);
+		if (to >= from) {
+			to++;
+		}
+
+		int[] order = order(solution);
+		int[] moved = new int[size];
+		int[] rest = new int[size - length];
+		int r = 0;
+		for (int i = 0; i < size; i++) {
+			if ((i < from) || (i >= (from + length))) {
+				rest[r++] = order[i];
+			}
+		}
+		System.arraycopy(rest, 0, moved, 0, to);
+		System.arraycopy(order, from, moved, to, length);
+		System.arraycopy(rest, to, moved, to + length, rest.length - to);
+		return new Solution(solution.getDataset(), moved);
+	}
+
+	/**
+	 * Finds the LAD and FAD pairs of the taxa in the dataset.
+	 *
+	 * @param dataset
+	 *            the dataset.
+	 */
+	protected void findPairs(final Dataset dataset) {
+		int n = dataset.getEvents().size();
+		Map<String, Integer> lads = Maps.newHashMap();
+		for (int id = 0; id < n; id++) {
+			String name = dataset.getEvent(id).getName();
+			if (name.endsWith("LAD")) {
+				lads.put(name.replace("LAD", "FAD").toLowerCase(), id);
+			}
+		}
+		partners = new int[n];
+		Arrays.fill(partners, -1);
+		int[] found = new int[n];
+		int count = 0;
+		for (int id = 0; id < n; id++) {
+			Event e = dataset.getEvent(id);
+			Integer lad = lads.get(e.getName().toLowerCase());
+			if ((lad != null) && (lad != id)) {
+				partners[id] = lad;
+				partners[lad] = id;
+				found[count++] = id;
+				found[count++] = lad;
+			}
+		}
+		pairs = Arrays.copyOf(found, count);
+		paired = dataset;
+	}
+
+	/**
+	 * Gets the number of events that are evaluated to check and score a
+	 * candidate.
+	 *
+	 * @param solution
+	 *            the solution that was mutated.
+	 * @param candidate
+	 *            the candidate.
+	 * @return the span of a single move, or the number of events.
+	 */
+	protected int getCost(final Solution solution, final Solution candidate) {
+		if (candidate.getParent() == solution) {
+			return Math.abs(candidate.getMoveTo() - candidate.getMoveFrom()) + 1;
+		}
+		return candidate.size();
+	}
+
+	/**
+	 * Gets the probability of choosing each operator.
+	 *
+	 * @return the probabilities, in the order of {@link #OPERATORS}.
+	 */
+	public synchronized double[] getProbabilities() {
+		return (probabilities == null) ? null : probabilities.clone();
+	}
+
+	@Override
+	public synchronized Solution internalMutate(final Solution solution) {
+		int size = solution.size();
+		if (size < 3) {
+			return super.internalMutate(solution);
+		}
+		if (solution.getDataset() != paired) {
+			findPairs(solution.getDataset());
+			if (probabilities == null) {
+				probabilities = new double[OPERATORS.length];
+				adapt();
+			}
+		}
+
+		// the solution was accepted if we proposed it
+		for (int i = 0; i < PENDING; i++) {
+			if (pending[i] == solution) {
+				accepted[pendingOperator[i]]++;
+				pending[i] = null;
+			}
+		}
+
+		// choose an operator
+		double choice = random.nextDouble();
+		int op = 0;
+		while ((op < (OPERATORS.length - 1)) && ((choice -= probabilities[op]) >= 0)) {
+			op++;
+		}
+		if (!isEnabled(op)) {
+			op = INSERTION;
+		}
+
+		// propose a candidate
+		Solution candidate;
+		switch (op) {
+			case SWAP:
+				candidate = swap(solution);
+				break;
+			case BLOCK:
+				candidate = block(solution);
+				break;
+			case REVERSAL:
+				candidate = reversal(solution);
+				break;
+			case PAIR:
+				candidate = pair(solution);
+				break;
+			default:
+				candidate = super.internalMutate(solution);
+				break;
+		}
+
+		// wait for feedback
+		pending[next] = candidate;
+		pendingOperator[next] = op;
+		pendingCost[next] = getCost(solution, candidate);
+		pendingParent[next] = solution.getScore();
+		pendingScored[next] = false;
+		next = (next + 1) % PENDING;
+		return candidate;
+	}
+
+	/**
+	 * Checks whether an operator can be used with the dataset.
+	 *
+	 * @param op
+	 *            the operator.
+	 * @return true if the operator can be used.
+	 */
+	protected boolean isEnabled(final int op) {
+		return (op != PAIR) || ((pairs != null) && (pairs.length > 0));
+	}
+
+	/**
+	 * Gets the event ids of a solution in order.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the event ids.
+	 */
+	protected int[] order(final Solution solution) {
+		int[] order = new int[solution.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = solution.getId(i);
+		}
+		return order;
+	}
+
+	/**
+	 * Moves the LAD and FAD of a taxon by the same distance, keeping the
+	 * range of the taxon.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the new solution, which has no parent and is checked in full.
+	 */
+	protected Solution pair(final Solution solution) {
+		int size = solution.size();
+
+		// find a taxon that does not span the whole solution
+		int first = random.nextInt(pairs.length);
+		int a = 0;
+		int b = size - 1;
+		for (int attempt = 0; ((b - a) >= (size - 1)) && (attempt < pairs.length); attempt++) {
+			int id = pairs[(first + attempt) % pairs.length];
+			a = Math.min(solution.getPosition(id), solution.getPosition(partners[id]));
+			b = Math.max(solution.getPosition(id), solution.getPosition(partners[id]));
+		}
+		if ((b - a) >= (size - 1)) {
+			return super.internalMutate(solution);
+		}
+		int to = random.nextInt(size - (b - a) - 1);
+		if (to >= a) {
+			to++;
+		}
+
+		int[] order = order(solution);
+		int[] moved = new int[size];
+		int r = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == to) {
+				moved[i] = order[a];
+			} else if (i == (to + (b - a))) {
+				moved[i] = order[b];
+			} else {
+				if ((r == a) || (r == b)) {
+					r++;
+				}
+				if ((r == a) || (r == b)) {
+					r++;
+				}
+				moved[i] = order[r++];
+			}
+		}
+		return new Solution(solution.getDataset(), moved);
+	}
+
+	@Override
+	public synchronized void restore(final DataInput in) throws IOException {
+		super.restore(in);
+		probabilities = new double[OPERATORS.length];
+		for (int op = 0; op < OPERATORS.length; op++) {
+			probabilities[op] = in.readDouble();
+		}
+	}
+
+	/**
+	 * Reverses a run of events.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the new solution, which has no parent and is checked in full.
+	 */
+	protected Solution reversal(final Solution solution) {
+		int size = solution.size();
+		int length = 2 + random.nextInt(Math.min(span, size) - 1);
+		int from = random.nextInt((size - length) + 1);
+
+		int[] order = order(solution);
+		for (int i = from, j = (from + length) - 1; i < j; i++, j--) {
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		return new Solution(solution.getDataset(), order);
+	}
+
+	@Override
+	public synchronized void save(final DataOutput out) throws IOException {
+		super.save(out);
+		for (int op = 0; op < OPERATORS.length; op++) {
+			out.writeDouble((probabilities == null) ? 1.0 / OPERATORS.length : probabilities[op]);
+		}
+	}
+
+	/**
+	 * Exchanges two events.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the new solution, which has no parent and is checked in full.
+	 */
+	protected Solution swap(final Solution solution) {
+		int size = solution.size();
+		int a = random.nextInt(size);
+		int b = random.nextInt(size - 1);
+		if (b >= a) {
+			b++;
+		}
+
+		int[] order = order(solution);
+		int swap = order[a];
+		order[a] = order[b];
+		order[b] = swap;
+		return new Solution(solution.getDataset(), order);
+	}
+
+	@Override
+	public synchronized void tried(final double temp, final Solution current, final Solution best) {
+		super.tried(temp, current, best);
+
+		// credit the operator that proposed the candidate
+		for (int i = 0; (current != null) && (i < PENDING); i++) {
+			if ((pending[i] == current) && !pendingScored[i]) {
+				int op = pendingOperator[i];
+				pendingScored[i] = true;
+				cost[op] += pendingCost[i];
+				double parent = pendingParent[i];
+				if ((parent > 0) && (current.getScore() < parent)) {
+					gain[op] += (parent - current.getScore()) / parent;
+				}
+				if ((++scored % window) == 0) {
+					adapt();
+				}
+				return;
+			}
+		}
+	}
+}
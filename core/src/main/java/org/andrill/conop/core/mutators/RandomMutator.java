@@ -1,13 +1,12 @@
 package org.andrill.conop.core.mutators;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
-import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Solution;
 
-import com.google.common.collect.Lists;
-
 /**
  * Randomly moves an event with no consideration to constraints.
  *
@@ -17,23 +16,41 @@ public class RandomMutator extends AbstractMutator {
 	protected Random random = new Random();
 
 	public RandomMutator() {
-		super("Random Mutator");
+		this("Random Mutator");
+	}
+
+	protected RandomMutator(final String name) {
+		super(name);
+	}
+
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		super.restore(in);
+		random.setSeed(in.readLong());
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		super.save(out);
+
+		// reseed so the saved seed continues the same sequence
+		long seed = random.nextLong();
+		random.setSeed(seed);
+		out.writeLong(seed);
 	}
 
 	@Override
 	public Solution internalMutate(final Solution solution) {
-		List<Event> events = Lists.newArrayList(solution.getEvents());
+		int size = solution.size();
 
 		// pick a random event and move it to a new position randomly
-		int cur = random.nextInt(events.size());
-		int pos = random.nextInt(events.size());
+		int cur = random.nextInt(size);
+		int pos = random.nextInt(size);
 		while (pos == cur) {
-			pos = random.nextInt(events.size());
+			pos = random.nextInt(size);
 		}
 
 		// build a new solution
-		Event e = events.remove(cur);
-		events.add(pos, e);
-		return new Solution(events);
+		return solution.move(cur, pos);
 	}
 }
@@ -3,27 +3,174 @@ package org.andrill.conop.core.penalties;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.andrill.conop.core.AbstractConfigurable;
 import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Dataset;
 import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.listeners.Listener;
+import org.andrill.conop.core.solver.ThreadBudget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.MoreExecutors;
 
-public abstract class AbstractParallelPenalty extends AbstractConfigurable implements Penalty {
+/**
+ * A penalty that scores the parts of a solution in parallel on a pool sized
+ * from the thread budget of the solver. The pool is created on the first score
+ * and shut down, and its threads returned to the budget, when the solver stops.
+ */
+public abstract class AbstractParallelPenalty extends AbstractConfigurable implements BatchPenalty, BoundedPenalty,
+		Listener {
+
+	/**
+	 * Combines the results of two tasks.
+	 */
+	protected interface Combiner<T> {
+		T combine(T a, T b);
+	}
+
+	/**
+	 * Runs a range of tasks, splitting it in two by cost until each part is
+	 * small enough to run sequentially. Idle workers steal the forked halves,
+	 * which absorbs stragglers from expensive tasks.
+	 */
+	private static class PartitionTask<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 1L;
+		private final List<? extends Callable<T>> tasks;
+		private final long[] prefix;
+		private final long grain;
+		private final Combiner<T> combiner;
+		private final int lo;
+		private final int hi;
+
+		PartitionTask(final List<? extends Callable<T>> tasks, final long[] prefix, final long grain,
+				final Combiner<T> combiner, final int lo, final int hi) {
+			this.tasks = tasks;
+			this.prefix = prefix;
+			this.grain = grain;
+			this.combiner = combiner;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected T compute() {
+			if (((hi - lo) == 1) || ((prefix[hi] - prefix[lo]) <= grain)) {
+				return run(tasks, combiner, lo, hi);
+			}
+
+			// split at the cost midpoint
+			long half = (prefix[lo] + prefix[hi]) / 2;
+			int mid = lo + 1;
+			while ((mid < (hi - 1)) && (prefix[mid] < half)) {
+				mid++;
+			}
+			PartitionTask<T> left = new PartitionTask<T>(tasks, prefix, grain, combiner, lo, mid);
+			left.fork();
+			T right = new PartitionTask<T>(tasks, prefix, grain, combiner, mid, hi).compute();
+			return combiner.combine(left.join(), right);
+		}
+	}
+
+	/**
+	 * Sums scores.
+	 */
+	protected static final Combiner<Double> SUM = new Combiner<Double>() {
+		@Override
+		public Double combine(final Double a, final Double b) {
+			return a + b;
+		}
+	};
+
+	/**
+	 * Sums the scores of blocks of solutions.
+	 */
+	protected static final Combiner<double[]> SUM_BATCH = new Combiner<double[]>() {
+		@Override
+		public double[] combine(final double[] a, final double[] b) {
+			for (int i = 0; i < a.length; i++) {
+				a[i] += b[i];
+			}
+			return a;
+		}
+	};
+
+	/**
+	 * Accumulates the scores of bounded tasks so the remaining tasks can be
+	 * skipped once the total exceeds the bound.
+	 */
+	private static class Bound {
+		private final AtomicLong total;
+		private final double bound;
+
+		Bound(final double initial, final double bound) {
+			total = new AtomicLong(Double.doubleToLongBits(initial));
+			this.bound = bound;
+		}
+
+		void add(final double value) {
+			long current;
+			do {
+				current = total.get();
+			} while (!total.compareAndSet(current, Double.doubleToLongBits(Double.longBitsToDouble(current) + value)));
+		}
+
+		boolean exceeded() {
+			return Double.longBitsToDouble(total.get()) > bound;
+		}
+	}
+
+	/**
+	 * Skips its task once the bound is exceeded.
+	 */
+	private static class BoundedTask implements Callable<Double> {
+		private final Callable<Double> task;
+		private final Bound bound;
+
+		BoundedTask(final Callable<Double> task, final Bound bound) {
+			this.task = task;
+			this.bound = bound;
+		}
+
+		@Override
+		public Double call() throws Exception {
+			if (bound.exceeded()) {
+				return 0.0;
+			}
+			double value = task.call();
+			bound.add(value);
+			return value;
+		}
+	}
+
+	private static <T> T run(final List<? extends Callable<T>> tasks, final Combiner<T> combiner, final int lo,
+			final int hi) {
+		try {
+			T result = tasks.get(lo).call();
+			for (int i = lo + 1; i < hi; i++) {
+				result = combiner.combine(result, tasks.get(i).call());
+			}
+			return result;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	protected final Logger log = LoggerFactory.getLogger(getClass());
-	protected ExecutorService pool;
+	protected ForkJoinPool pool;
 	protected int procs = 1;
+	protected int reserved = 0;
+	protected boolean owner = false;
 	protected final String name;
-	protected boolean first = true;
+	protected volatile boolean first = true;
 
 	protected AbstractParallelPenalty(final String name) {
 		this.name = name;
@@ -31,24 +178,87 @@ public abstract class AbstractParallelPenalty extends AbstractConfigurable imple
 
 	@Override
 	public void configure(final Configuration config) {
-		this.procs = config.get("processors", Runtime.getRuntime().availableProcessors());
+		this.procs = config.get("processors", ThreadBudget.available());
 		log.debug("Configuring processors as '{}'", procs);
-		if (procs > 1) {
-			pool = MoreExecutors.getExitingExecutorService((ThreadPoolExecutor) Executors.newFixedThreadPool(procs));
-		}
 	}
 
-	protected Future<Double> execute(final Penalty task, final Solution solution) {
+	protected <T> Future<T> execute(final Callable<T> task) {
 		if (pool == null) {
-			return Futures.immediateFuture(task.score(solution));
+			try {
+				return Futures.immediateFuture(task.call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				return Futures.immediateFailedFuture(e);
+			}
 		} else {
-			return pool.submit(new Callable<Double>() {
-				@Override
-				public Double call() throws Exception {
-					return task.score(solution);
-				}
-			});
+			return pool.submit(task);
+		}
+	}
+
+	/**
+	 * Runs the tasks as chunks of roughly equal cost and combines their
+	 * results.
+	 *
+	 * @param tasks
+	 *            the tasks, which must not be empty.
+	 * @param costs
+	 *            the relative cost of each task.
+	 * @param combiner
+	 *            combines the results.
+	 * @return the combined result.
+	 */
+	protected <T> Future<T> execute(final List<? extends Callable<T>> tasks, final long[] costs,
+			final Combiner<T> combiner) {
+		if (pool == null) {
+			return Futures.immediateFuture(run(tasks, combiner, 0, tasks.size()));
+		}
+
+		long[] prefix = new long[tasks.size() + 1];
+		for (int i = 0; i < tasks.size(); i++) {
+			prefix[i + 1] = prefix[i] + Math.max(1, costs[i]);
+		}
+		long grain = Math.max(1, prefix[tasks.size()] / (4 * procs));
+		return pool.submit(new PartitionTask<T>(tasks, prefix, grain, combiner, 0, tasks.size()));
+	}
+
+	/**
+	 * Runs the scoring tasks in order, skipping the rest once the total
+	 * exceeds the bound. Since scores are never negative, the partial total is
+	 * then still greater than the bound.
+	 *
+	 * @param tasks
+	 *            the tasks, which must not be empty, most important first.
+	 * @param costs
+	 *            the relative cost of each task.
+	 * @param initial
+	 *            the score already known, which counts towards the bound but
+	 *            is not included in the result.
+	 * @param bound
+	 *            the bound.
+	 * @return the total of the tasks, or a partial total that exceeds the
+	 *         bound once the initial score is added.
+	 */
+	protected Future<Double> execute(final List<? extends Callable<Double>> tasks, final long[] costs,
+			final double initial, final double bound) {
+		if (bound == Double.POSITIVE_INFINITY) {
+			return execute(tasks, costs, SUM);
+		}
+		Bound shared = new Bound(initial, bound);
+		List<Callable<Double>> bounded = Lists.newArrayListWithCapacity(tasks.size());
+		for (Callable<Double> task : tasks) {
+			bounded.add(new BoundedTask(task, shared));
 		}
+		return execute(bounded, costs, SUM);
+	}
+
+	protected Future<Double> execute(final Penalty task, final Solution solution) {
+		return execute(new Callable<Double>() {
+			@Override
+			public Double call() throws Exception {
+				return task.score(solution);
+			}
+		});
 	}
 
 	protected void initialize(final Dataset dataset) {
@@ -57,26 +267,169 @@ public abstract class AbstractParallelPenalty extends AbstractConfigurable imple
 
 	protected abstract List<Future<Double>> internalScore(Solution solution);
 
+	/**
+	 * Scores a solution, stopping early if the score exceeds the bound. By
+	 * default the solution is scored in full.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @param bound
+	 *            the bound.
+	 * @return the partial scores.
+	 */
+	protected List<Future<Double>> internalScore(final Solution solution, final double bound) {
+		return internalScore(solution);
+	}
+
+	/**
+	 * Scores a block of solutions. By default each solution is scored on its
+	 * own; subclasses should override this to score the block in a single task
+	 * per location.
+	 *
+	 * @param solutions
+	 *            the solutions.
+	 * @return the partial scores of each solution.
+	 */
+	protected List<Future<double[]>> internalScoreBatch(final List<Solution> solutions) {
+		double[] scores = new double[solutions.size()];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = sum(internalScore(solutions.get(i)));
+		}
+		List<Future<double[]>> results = Lists.newArrayList();
+		results.add(Futures.immediateFuture(scores));
+		return results;
+	}
+
+	protected void prepare() {
+		if (!first) {
+			return;
+		}
+		synchronized (this) {
+			if (first) {
+				initialize(context.getDataset());
+
+				// size our pool from what the solver left of the thread budget
+				if ((pool == null) && (procs > 1)) {
+					ThreadBudget budget = context.get(ThreadBudget.class);
+					if (budget != null) {
+						int granted = budget.reserve(procs);
+						if (granted < 2) {
+							budget.release(granted);
+							procs = 1;
+						} else {
+							procs = granted;
+							reserved = granted;
+						}
+						log.debug("Reserved '{}' processors from the thread budget", procs);
+					}
+					if (procs > 1) {
+						pool = new ForkJoinPool(procs);
+						owner = true;
+					}
+				}
+				first = false;
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the pool if this penalty created it and returns the reserved
+	 * threads to the budget. Later scores run on the calling thread.
+	 */
+	public synchronized void close() {
+		if (owner) {
+			pool.shutdownNow();
+			owner = false;
+		}
+		pool = null;
+		if (reserved > 0) {
+			ThreadBudget budget = context.get(ThreadBudget.class);
+			if (budget != null) {
+				budget.release(reserved);
+			}
+			reserved = 0;
+		}
+	}
+
 	@Override
-	public double score(final Solution solution) {
-		if (first) {
-			first = false;
-			initialize(context.getDataset());
+	public void started(final Solution initial) {
+		// do nothing
+	}
+
+	@Override
+	public void stopped(final Solution solution) {
+		close();
+	}
+
+	@Override
+	public void tried(final double temp, final Solution current, final Solution best) {
+		// do nothing
+	}
+
+	/**
+	 * Waits for a partial score, rethrowing the failure of its task so a
+	 * failed partition never silently drops out of the score.
+	 *
+	 * @param result
+	 *            the partial score.
+	 * @return the partial score.
+	 */
+	private <T> T get(final Future<T> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while scoring", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException("Unable to score solution", cause);
 		}
+	}
 
+	private double sum(final List<Future<Double>> results) {
 		double penalty = 0;
-		for (Future<Double> r : internalScore(solution)) {
-			try {
-				penalty += r.get();
-			} catch (InterruptedException e) {
-				// ignore
-			} catch (ExecutionException e) {
-				// ignore
-			}
+		for (Future<Double> r : results) {
+			penalty += get(r);
 		}
 		return penalty;
 	}
 
+	@Override
+	public double score(final Solution solution) {
+		prepare();
+		return sum(internalScore(solution.forDataset(context.getDataset())));
+	}
+
+	@Override
+	public double score(final Solution solution, final double bound) {
+		prepare();
+		return sum(internalScore(solution.forDataset(context.getDataset()), bound));
+	}
+
+	@Override
+	public double[] scoreBatch(final List<Solution> solutions) {
+		prepare();
+
+		List<Solution> batch = Lists.newArrayListWithCapacity(solutions.size());
+		for (Solution solution : solutions) {
+			batch.add(solution.forDataset(context.getDataset()));
+		}
+
+		double[] scores = new double[batch.size()];
+		for (Future<double[]> r : internalScoreBatch(batch)) {
+			double[] partial = get(r);
+			for (int i = 0; i < scores.length; i++) {
+				scores[i] += partial[i];
+			}
+		}
+		return scores;
+	}
+
 	@Override
 	public String toString() {
 		return name;
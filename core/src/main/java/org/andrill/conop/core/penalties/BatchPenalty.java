@@ -0,0 +1,23 @@
+package org.andrill.conop.core.penalties;
+
+import java.util.List;
+
+import org.andrill.conop.core.Solution;
+
+/**
+ * A {@link Penalty} that can calculate the penalties for a block of solutions
+ * at once, which amortizes the cost of dispatching work over the block.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public interface BatchPenalty extends Penalty {
+
+	/**
+	 * Calculate the scores of the solutions.
+	 *
+	 * @param solutions
+	 *            the solutions.
+	 * @return the scores, in the same order as the solutions.
+	 */
+	double[] scoreBatch(List<Solution> solutions);
+}
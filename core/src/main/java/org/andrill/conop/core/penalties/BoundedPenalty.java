@@ -0,0 +1,24 @@
+package org.andrill.conop.core.penalties;
+
+import org.andrill.conop.core.Solution;
+
+/**
+ * A {@link Penalty} that can stop scoring a solution as soon as its score is
+ * known to exceed a bound.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public interface BoundedPenalty extends Penalty {
+
+	/**
+	 * Calculate the score, stopping early if it exceeds the bound.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @param bound
+	 *            the bound.
+	 * @return the score if it is at most the bound, otherwise a partial score
+	 *         that is greater than the bound.
+	 */
+	double score(Solution solution, double bound);
+}
@@ -0,0 +1,19 @@
+package org.andrill.conop.core.penalties;
+
+/**
+ * A {@link Penalty} that can create copies of itself that share its read-only
+ * state, so several solver chains can score in parallel without each building
+ * their own tables.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public interface ForkablePenalty extends Penalty {
+
+	/**
+	 * Creates a penalty that shares the read-only state of this penalty but
+	 * keeps its own working state.
+	 *
+	 * @return the new penalty.
+	 */
+	Penalty fork();
+}
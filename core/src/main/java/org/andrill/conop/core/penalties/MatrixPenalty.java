@@ -1,30 +1,55 @@
 package org.andrill.conop.core.penalties;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
+import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Dataset;
-import org.andrill.conop.core.Event;
 import org.andrill.conop.core.Location;
 import org.andrill.conop.core.Observation;
 import org.andrill.conop.core.Solution;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 
 /**
  * An {@link Penalty} implementation that places events using cumulative
  * penalties in a matrix.
  *
+ * Each location only keeps rows for the events it observes, since unobserved
+ * events only carry the running minimum forward and never change the score.
+ * For the same reason, a location is only re-scored when a candidate changes
+ * the relative order of its observed events; otherwise its cached score is
+ * reused.
+ *
+ * In incremental mode, the cumulative rows of a base solution are cached and
+ * candidates that only differ from the base in a window of positions are
+ * scored by recomputing just the rows in that window.
+ *
+ * The tables are stored as flat, row-major arrays. With
+ * <code>precision: 'single'</code> they are stored as floats, which halves
+ * their size; candidates that score close to the best score seen so far are
+ * then re-scored in double precision from the same penalties as the double
+ * tables, so the best solution is reported with its double precision score up
+ * to rounding in the order of the sums.
+ *
+ * The tables never change once built, so {@link #fork()} creates penalties
+ * that share them, e.g. for solvers that run several chains in parallel.
+ *
  * @author Josh Reed (jareed@andrill.org)
  */
-public class MatrixPenalty extends AbstractParallelPenalty {
+public class MatrixPenalty extends AbstractParallelPenalty implements ForkablePenalty {
+	private static final boolean DEFAULT_INCREMENTAL = true;
+	private static final String DEFAULT_PRECISION = "double";
+	private static final double EXACT_MARGIN = 1e-4;
 
-	private static class LocationMatrix implements Penalty {
+	private abstract static class LocationMatrix implements Penalty {
 		private static final Comparator<BigDecimal> REVERSE = new Comparator<BigDecimal>() {
 			@Override
 			public int compare(final BigDecimal o1, final BigDecimal o2) {
@@ -32,8 +57,16 @@ public class MatrixPenalty extends AbstractParallelPenalty {
 			}
 		};
 		protected final List<BigDecimal> levels;
-		protected double[][] matrix;
-		protected double[][] penalties;
+		protected final int levelCount;
+		protected int[] rows;
+		protected int[] events;
+		protected BigDecimal[] observed;
+		protected double[] weightUp;
+		protected double[] weightDown;
+		protected int[] work;
+		protected int[] baseRows;
+		protected int[] basePositions;
+		protected double baseScore;
 		protected final Location location;
 		protected Dataset dataset;
 
@@ -50,39 +83,187 @@ public class MatrixPenalty extends AbstractParallelPenalty {
 			// get our sorted levels
 			levels = Lists.newArrayList(location.getLevels());
 			Collections.sort(levels, REVERSE);
+			levelCount = levels.size();
 
 			// initialize
 			init(dataset);
 		}
 
+		/**
+		 * Create a new LocationMatrix that shares the tables of another but
+		 * keeps its own working state.
+		 *
+		 * @param source
+		 *            the source matrix.
+		 */
+		protected LocationMatrix(final LocationMatrix source) {
+			location = source.location;
+			dataset = source.dataset;
+			levels = source.levels;
+			levelCount = source.levelCount;
+			rows = source.rows;
+			events = source.events;
+			observed = source.observed;
+			weightUp = source.weightUp;
+			weightDown = source.weightDown;
+			work = new int[events.length];
+		}
+
+		/**
+		 * Creates a copy of this matrix that shares its tables but keeps its
+		 * own working state.
+		 *
+		 * @return the copy.
+		 */
+		public abstract LocationMatrix copy();
+
 		private void init(final Dataset dataset) {
-			int eventCount = dataset.getEvents().size();
-			int levelCount = levels.size();
+			// map event ids to rows for the observed events only
+			rows = new int[dataset.getEvents().size()];
+			Arrays.fill(rows, -1);
+			events = new int[location.getObservations().size()];
+			int row = 0;
+			for (Observation o : location.getObservations()) {
+				int id = dataset.getId(o.getEvent());
+				if (rows[id] < 0) {
+					rows[id] = row;
+					events[row++] = id;
+				}
+			}
+			events = Arrays.copyOf(events, row);
+
+			// keep the observations for exact scoring
+			observed = new BigDecimal[row];
+			weightUp = new double[row];
+			weightDown = new double[row];
+			for (int i = 0; i < row; i++) {
+				Observation o = location.getObservation(dataset.getEvent(events[i]));
+				observed[i] = o.getLevel();
+				weightUp[i] = o.getWeightUp();
+				weightDown[i] = o.getWeightDown();
+			}
+			work = new int[row];
+		}
 
-			// initialize our work matrix
-			matrix = new double[eventCount][levels.size()];
+		/**
+		 * Gets the penalty of placing the event in the row at the level.
+		 */
+		protected double getPenalty(final int row, final int level) {
+			double diff = levels.get(level).subtract(observed[row]).doubleValue();
+			if (diff > 0) {
+				return diff * weightUp[row];
+			} else {
+				return -diff * weightDown[row];
+			}
+		}
+
+		/**
+		 * Fills the work array with the rows of the observed events in the
+		 * order they appear in the solution. Unobserved events only carry the
+		 * running minimum forward so they do not affect the score.
+		 */
+		protected void project(final Solution solution) {
+			for (int i = 0; i < events.length; i++) {
+				work[i] = solution.getPosition(events[i]);
+			}
+			Arrays.sort(work);
+			for (int i = 0; i < events.length; i++) {
+				work[i] = rows[solution.getId(work[i])];
+			}
+		}
 
-			// initialize our penalty matrix
-			penalties = new double[eventCount][levelCount];
-			for (Event e : dataset.getEvents()) {
-				int i = dataset.getId(e);
-				Observation o = location.getObservation(e);
+		/**
+		 * Counts the observed events of the base solution between the start and
+		 * end positions (inclusive).
+		 *
+		 * @param start
+		 *            the start position.
+		 * @param end
+		 *            the end position.
+		 * @return the number of observed events.
+		 */
+		public int count(final int start, final int end) {
+			return lowerBound(basePositions, events.length, end + 1)
+					- lowerBound(basePositions, events.length, start);
+		}
+
+		/**
+		 * Score the solution in double precision without using the penalty
+		 * tables. The penalties are computed from the level differences the
+		 * same way the tables are built, so the score only differs from double
+		 * precision table scoring by the order of the sums.
+		 *
+		 * @param solution
+		 *            the solution.
+		 * @return the penalty.
+		 */
+		public double exact(final Solution solution) {
+			int count = events.length;
+			if (count == 0) {
+				return 0;
+			}
+			project(solution);
+
+			double[] prev = new double[levelCount];
+			double[] next = new double[levelCount];
+			for (int k = 0; k < count; k++) {
+				int row = work[k];
+				double min = prev[0];
 				for (int j = 0; j < levelCount; j++) {
-					if (o == null) {
-						penalties[i][j] = 0.0;
-					} else {
-						BigDecimal level = levels.get(j);
-						double diff = level.subtract(o.getLevel()).doubleValue();
-						if (diff > 0) {
-							penalties[i][j] = diff * o.getWeightUp();
-						} else {
-							penalties[i][j] = -diff * o.getWeightDown();
-						}
-					}
+					min = Math.min(min, prev[j]);
+					next[j] = getPenalty(row, j) + ((k == 0) ? 0 : min);
 				}
+				double[] swap = prev;
+				prev = next;
+				next = swap;
+			}
+
+			double best = Double.MAX_VALUE;
+			for (int j = 0; j < levelCount; j++) {
+				best = Math.min(best, prev[j]);
 			}
+			return best;
 		}
 
+		/**
+		 * Score the solution against this location and cache the cumulative
+		 * rows so later candidates can be scored incrementally against it.
+		 *
+		 * @param solution
+		 *            the new base solution.
+		 * @return the penalty.
+		 */
+		public double rebase(final Solution solution) {
+			int count = events.length;
+			if (baseRows == null) {
+				baseRows = new int[count];
+				basePositions = new int[count];
+			}
+			if (count == 0) {
+				baseScore = 0;
+				return baseScore;
+			}
+
+			project(solution);
+			System.arraycopy(work, 0, baseRows, 0, count);
+			for (int k = 0; k < count; k++) {
+				basePositions[k] = solution.getPosition(events[baseRows[k]]);
+			}
+			baseScore = rebase(baseRows, count);
+			return baseScore;
+		}
+
+		/**
+		 * Fill the forward and backward rows for the base rows.
+		 *
+		 * @param rows
+		 *            the rows in base order.
+		 * @param count
+		 *            the number of rows.
+		 * @return the penalty.
+		 */
+		protected abstract double rebase(int[] rows, int count);
+
 		/**
 		 * Score the solution against this location.
 		 *
@@ -92,55 +273,760 @@ public class MatrixPenalty extends AbstractParallelPenalty {
 		 */
 		@Override
 		public double score(final Solution solution) {
-			int eventCount = solution.getEvents().size();
-			int levelCount = levels.size();
+			int count = events.length;
+			if (count == 0) {
+				return 0;
+			}
+			project(solution);
+			return score(work, count);
+		}
 
-			// initialize our score matrix with the penalties
-			for (int i = 0; i < eventCount; i++) {
-				Event e = solution.getEvent(i);
-				System.arraycopy(penalties[dataset.getId(e)], 0, matrix[i], 0, levelCount);
+		/**
+		 * Accumulate the penalties of the rows.
+		 *
+		 * @param rows
+		 *            the rows in solution order.
+		 * @param count
+		 *            the number of rows.
+		 * @return the penalty.
+		 */
+		protected abstract double score(int[] rows, int count);
+
+		/**
+		 * Score a solution that only differs from the base solution between
+		 * the start and end positions (inclusive).
+		 *
+		 * @param solution
+		 *            the solution.
+		 * @param start
+		 *            the first changed position.
+		 * @param end
+		 *            the last changed position.
+		 * @return the penalty.
+		 */
+		public double score(final Solution solution, final int start, final int end) {
+			// find the observed events inside the window
+			int first = lowerBound(basePositions, events.length, start);
+			int last = lowerBound(basePositions, events.length, end + 1) - 1;
+			if (first > last) {
+				return baseScore;
+			}
+
+			// the same events are inside the window in the solution
+			int n = last - first + 1;
+			for (int t = 0; t < n; t++) {
+				work[t] = solution.getPosition(events[baseRows[first + t]]);
 			}
+			Arrays.sort(work, 0, n);
+			boolean same = true;
+			for (int t = 0; t < n; t++) {
+				work[t] = rows[solution.getId(work[t])];
+				same &= (work[t] == baseRows[first + t]);
+			}
+			if (same) {
+				return baseScore;
+			}
+			return score(work, first, last);
+		}
+
+		/**
+		 * Accumulate the rows of a window and join them with the cached rows
+		 * around it.
+		 *
+		 * @param rows
+		 *            the rows of the window in solution order.
+		 * @param first
+		 *            the first base row replaced by the window.
+		 * @param last
+		 *            the last base row replaced by the window.
+		 * @return the penalty.
+		 */
+		protected abstract double score(int[] rows, int first, int last);
+	}
 
-			// accumulate penalties
-			for (int i = 1; i < eventCount; i++) {
-				double min = matrix[i - 1][0];
+	/**
+	 * Keeps the penalty and cumulative tables as flat, row-major double arrays.
+	 */
+	private static class DoubleLocationMatrix extends LocationMatrix {
+		protected double[] penalties;
+		protected double[] forward;
+		protected double[] backward;
+		protected double[] previous;
+		protected double[] current;
+
+		public DoubleLocationMatrix(final Location location, final Dataset dataset) {
+			super(location, dataset);
+
+			int count = events.length;
+			penalties = new double[count * levelCount];
+			for (int i = 0; i < count; i++) {
 				for (int j = 0; j < levelCount; j++) {
-					min = Math.min(min, matrix[i - 1][j]);
-					matrix[i][j] += min;
+					penalties[(i * levelCount) + j] = getPenalty(i, j);
 				}
 			}
+			previous = new double[levelCount];
+			current = new double[levelCount];
+		}
+
+		protected DoubleLocationMatrix(final DoubleLocationMatrix source) {
+			super(source);
+			penalties = source.penalties;
+			previous = new double[levelCount];
+			current = new double[levelCount];
+		}
 
-			// find minimum value in last column
+		@Override
+		public LocationMatrix copy() {
+			return new DoubleLocationMatrix(this);
+		}
+
+		/**
+		 * Accumulate the penalty for the row onto the previous cumulative row.
+		 */
+		private void accumulate(final double[] prev, final int from, final int row, final double[] next, final int to) {
+			int offset = row * levelCount;
+			double min = prev[from];
+			for (int j = 0; j < levelCount; j++) {
+				min = Math.min(min, prev[from + j]);
+				next[to + j] = penalties[offset + j] + min;
+			}
+		}
+
+		private double min(final double[] row, final int from) {
 			double best = Double.MAX_VALUE;
 			for (int j = 0; j < levelCount; j++) {
-				best = Math.min(best, matrix[eventCount - 1][j]);
+				best = Math.min(best, row[from + j]);
+			}
+			return best;
+		}
+
+		@Override
+		protected double rebase(final int[] rows, final int count) {
+			if (forward == null) {
+				forward = new double[events.length * levelCount];
+				backward = new double[events.length * levelCount];
+			}
+
+			// forward rows hold the cumulative penalties
+			System.arraycopy(penalties, rows[0] * levelCount, forward, 0, levelCount);
+			for (int k = 1; k < count; k++) {
+				accumulate(forward, (k - 1) * levelCount, rows[k], forward, k * levelCount);
+			}
+
+			// backward rows hold the minimum penalty of placing events k..n
+			// with event k at or above level j
+			for (int k = count - 1; k >= 0; k--) {
+				int offset = rows[k] * levelCount;
+				int to = k * levelCount;
+				double min = Double.MAX_VALUE;
+				for (int j = levelCount - 1; j >= 0; j--) {
+					double value = penalties[offset + j];
+					if (k < count - 1) {
+						value += backward[to + levelCount + j];
+					}
+					min = Math.min(min, value);
+					backward[to + j] = min;
+				}
+			}
+
+			return min(forward, (count - 1) * levelCount);
+		}
+
+		@Override
+		protected double score(final int[] rows, final int count) {
+			double[] prev = previous;
+			double[] next = current;
+			System.arraycopy(penalties, rows[0] * levelCount, prev, 0, levelCount);
+			for (int k = 1; k < count; k++) {
+				accumulate(prev, 0, rows[k], next, 0);
+				double[] swap = prev;
+				prev = next;
+				next = swap;
 			}
+			return min(prev, 0);
+		}
 
+		@Override
+		protected double score(final int[] rows, final int first, final int last) {
+			// seed with the cached row before the window
+			double[] prev = previous;
+			double[] next = current;
+			if (first == 0) {
+				System.arraycopy(penalties, rows[0] * levelCount, prev, 0, levelCount);
+			} else {
+				accumulate(forward, (first - 1) * levelCount, rows[0], prev, 0);
+			}
+
+			// accumulate penalties across the window
+			for (int t = 1; t <= last - first; t++) {
+				accumulate(prev, 0, rows[t], next, 0);
+				double[] swap = prev;
+				prev = next;
+				next = swap;
+			}
+
+			// join with the cached backward row after the window
+			if (last == events.length - 1) {
+				return min(prev, 0);
+			}
+			double best = Double.MAX_VALUE;
+			int after = (last + 1) * levelCount;
+			for (int j = 0; j < levelCount; j++) {
+				best = Math.min(best, prev[j] + backward[after + j]);
+			}
 			return best;
 		}
+	}
+
+	/**
+	 * Keeps the penalty and cumulative tables as flat, row-major float arrays,
+	 * which halves their size and the memory traffic of the inner loops.
+	 */
+	private static class FloatLocationMatrix extends LocationMatrix {
+		protected float[] penalties;
+		protected float[] forward;
+		protected float[] backward;
+		protected float[] previous;
+		protected float[] current;
 
+		public FloatLocationMatrix(final Location location, final Dataset dataset) {
+			super(location, dataset);
+
+			int count = events.length;
+			penalties = new float[count * levelCount];
+			for (int i = 0; i < count; i++) {
+				for (int j = 0; j < levelCount; j++) {
+					penalties[(i * levelCount) + j] = (float) getPenalty(i, j);
+				}
+			}
+			previous = new float[levelCount];
+			current = new float[levelCount];
+		}
+
+		protected FloatLocationMatrix(final FloatLocationMatrix source) {
+			super(source);
+			penalties = source.penalties;
+			previous = new float[levelCount];
+			current = new float[levelCount];
+		}
+
+		@Override
+		public LocationMatrix copy() {
+			return new FloatLocationMatrix(this);
+		}
+
+		/**
+		 * Accumulate the penalty for the row onto the previous cumulative row.
+		 */
+		private void accumulate(final float[] prev, final int from, final int row, final float[] next, final int to) {
+			int offset = row * levelCount;
+			float min = prev[from];
+			for (int j = 0; j < levelCount; j++) {
+				min = Math.min(min, prev[from + j]);
+				next[to + j] = penalties[offset + j] + min;
+			}
+		}
+
+		private double min(final float[] row, final int from) {
+			float best = Float.MAX_VALUE;
+			for (int j = 0; j < levelCount; j++) {
+				best = Math.min(best, row[from + j]);
+			}
+			return best;
+		}
+
+		@Override
+		protected double rebase(final int[] rows, final int count) {
+			if (forward == null) {
+				forward = new float[events.length * levelCount];
+				backward = new float[events.length * levelCount];
+			}
+
+			// forward rows hold the cumulative penalties
+			System.arraycopy(penalties, rows[0] * levelCount, forward, 0, levelCount);
+			for (int k = 1; k < count; k++) {
+				accumulate(forward, (k - 1) * levelCount, rows[k], forward, k * levelCount);
+			}
+
+			// backward rows hold the minimum penalty of placing events k..n
+			// with event k at or above level j
+			for (int k = count - 1; k >= 0; k--) {
+				int offset = rows[k] * levelCount;
+				int to = k * levelCount;
+				float min = Float.MAX_VALUE;
+				for (int j = levelCount - 1; j >= 0; j--) {
+					float value = penalties[offset + j];
+					if (k < count - 1) {
+						value += backward[to + levelCount + j];
+					}
+					min = Math.min(min, value);
+					backward[to + j] = min;
+				}
+			}
+
+			return min(forward, (count - 1) * levelCount);
+		}
+
+		@Override
+		protected double score(final int[] rows, final int count) {
+			float[] prev = previous;
+			float[] next = current;
+			System.arraycopy(penalties, rows[0] * levelCount, prev, 0, levelCount);
+			for (int k = 1; k < count; k++) {
+				accumulate(prev, 0, rows[k], next, 0);
+				float[] swap = prev;
+				prev = next;
+				next = swap;
+			}
+			return min(prev, 0);
+		}
+
+		@Override
+		protected double score(final int[] rows, final int first, final int last) {
+			// seed with the cached row before the window
+			float[] prev = previous;
+			float[] next = current;
+			if (first == 0) {
+				System.arraycopy(penalties, rows[0] * levelCount, prev, 0, levelCount);
+			} else {
+				accumulate(forward, (first - 1) * levelCount, rows[0], prev, 0);
+			}
+
+			// accumulate penalties across the window
+			for (int t = 1; t <= last - first; t++) {
+				accumulate(prev, 0, rows[t], next, 0);
+				float[] swap = prev;
+				prev = next;
+				next = swap;
+			}
+
+			// join with the cached backward row after the window
+			if (last == events.length - 1) {
+				return min(prev, 0);
+			}
+			float best = Float.MAX_VALUE;
+			int after = (last + 1) * levelCount;
+			for (int j = 0; j < levelCount; j++) {
+				best = Math.min(best, prev[j] + backward[after + j]);
+			}
+			return best;
+		}
 	}
 
-	protected Map<Location, LocationMatrix> matrices = null;
+	/**
+	 * Finds the first index whose value is at least the key.
+	 */
+	private static int lowerBound(final int[] values, final int length, final int key) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	protected LocationMatrix[] matrices = null;
+	protected long[] costs = null;
+	protected int[] byCost = null;
+	protected int[][] incidence = null;
+	protected int[] stamps = null;
+	protected int stamp = 0;
+	protected boolean incremental = DEFAULT_INCREMENTAL;
+	protected boolean single = false;
+	protected double lowest = Double.MAX_VALUE;
+	protected Solution base = null;
+	protected MatrixPenalty source = null;
 
 	public MatrixPenalty() {
 		super("Matrix Penalty");
 	}
 
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		incremental = config.get("incremental", DEFAULT_INCREMENTAL);
+		log.debug("Configuring incremental scoring as '{}'", incremental);
+
+		String precision = config.get("precision", DEFAULT_PRECISION);
+		log.debug("Configuring precision as '{}'", precision);
+		if ("single".equalsIgnoreCase(precision) || "float".equalsIgnoreCase(precision)) {
+			single = true;
+		} else if (!"double".equalsIgnoreCase(precision)) {
+			throw new IllegalArgumentException("Unknown precision '" + precision + "'");
+		}
+	}
+
+	@Override
+	public Penalty fork() {
+		MatrixPenalty fork = new MatrixPenalty();
+		fork.source = this;
+		fork.incremental = incremental;
+		fork.single = single;
+		fork.procs = procs;
+		fork.context = context;
+		return fork;
+	}
+
 	@Override
 	protected void initialize(final Dataset dataset) {
-		matrices = Maps.newHashMap();
-		for (Location location : dataset.getLocations()) {
-			matrices.put(location, new LocationMatrix(location, dataset));
+		if (source != null) {
+			// share the tables of the source penalty
+			synchronized (source) {
+				source.prepare();
+			}
+			pool = source.pool;
+			procs = source.procs;
+			matrices = new LocationMatrix[source.matrices.length];
+			for (int l = 0; l < matrices.length; l++) {
+				matrices[l] = source.matrices[l].copy();
+			}
+			costs = source.costs;
+			byCost = source.byCost;
+			incidence = source.incidence;
+			stamps = new int[matrices.length];
+			return;
+		}
+
+		List<Location> locations = dataset.getLocations().asList();
+		matrices = new LocationMatrix[locations.size()];
+		costs = new long[matrices.length];
+		for (int l = 0; l < matrices.length; l++) {
+			if (single) {
+				matrices[l] = new FloatLocationMatrix(locations.get(l), dataset);
+			} else {
+				matrices[l] = new DoubleLocationMatrix(locations.get(l), dataset);
+			}
+			costs[l] = (long) matrices[l].events.length * matrices[l].levelCount;
+		}
+
+		// index which locations observe each event
+		List<List<Integer>> observed = Lists.newArrayList();
+		for (int i = 0; i < dataset.getEvents().size(); i++) {
+			observed.add(Lists.<Integer> newArrayList());
+		}
+		for (int l = 0; l < matrices.length; l++) {
+			for (int id : matrices[l].events) {
+				observed.get(id).add(l);
+			}
+		}
+		incidence = new int[observed.size()][];
+		for (int i = 0; i < incidence.length; i++) {
+			incidence[i] = Ints.toArray(observed.get(i));
+		}
+		stamps = new int[matrices.length];
+
+		// order the locations from the most to the least expensive
+		byCost = new int[matrices.length];
+		for (int l = 0; l < matrices.length; l++) {
+			int k = l;
+			while ((k > 0) && (costs[byCost[k - 1]] < costs[l])) {
+				byCost[k] = byCost[k - 1];
+				k--;
+			}
+			byCost[k] = l;
+		}
+	}
+
+	@Override
+	public double score(final Solution solution) {
+		double penalty = super.score(solution);
+
+		// in single precision, re-score candidates that may become the best
+		// solution in double precision so the reported score does not drift
+		if (single && (penalty <= (lowest * (1 + EXACT_MARGIN)))) {
+			penalty = exact(solution.forDataset(context.getDataset()));
+			lowest = Math.min(lowest, penalty);
+		}
+		return penalty;
+	}
+
+	@Override
+	public double score(final Solution solution, final double bound) {
+		double penalty = super.score(solution, bound);
+		if (single && (penalty <= bound) && (penalty <= (lowest * (1 + EXACT_MARGIN)))) {
+			penalty = exact(solution.forDataset(context.getDataset()));
+			lowest = Math.min(lowest, penalty);
 		}
+		return penalty;
 	}
 
 	@Override
 	protected List<Future<Double>> internalScore(final Solution solution) {
+		return internalScore(solution, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	protected List<Future<Double>> internalScore(final Solution solution, final double bound) {
 		List<Future<Double>> results = Lists.newArrayList();
-		for (Location location : context.getDataset().getLocations()) {
-			results.add(execute(matrices.get(location), solution));
+		if (!incremental) {
+			// score the most expensive locations first
+			List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(matrices.length);
+			long[] ordered = new long[matrices.length];
+			for (int k = 0; k < byCost.length; k++) {
+				final LocationMatrix matrix = matrices[byCost[k]];
+				ordered[k] = costs[byCost[k]];
+				tasks.add(new Callable<Double>() {
+					@Override
+					public Double call() throws Exception {
+						return matrix.score(solution);
+					}
+				});
+			}
+			results.add(execute(tasks, ordered, 0, bound));
+			return results;
+		}
+
+		// find the window of positions that differ from the base solution
+		int size = solution.size();
+		int[] window = new int[2];
+		Solution parent = solution.getParent();
+		boolean move = window(solution, window);
+		int start = window[0];
+		int end = window[1];
+
+		// rebase if the window covers most of the solution, preferably on the
+		// parent so the candidates that follow are single moves from the base
+		if ((base == null) || (2 * (end - start + 1) > size)) {
+			if (parent == null) {
+				base = solution;
+				return rebase(solution);
+			}
+			base = parent;
+			for (Future<Double> f : rebase(parent)) {
+				Futures.getUnchecked(f);
+			}
+			move = true;
+			start = Math.min(solution.getMoveFrom(), solution.getMoveTo());
+			end = Math.max(solution.getMoveFrom(), solution.getMoveTo());
+		}
+
+		// a location can only change if at least two of its observed events
+		// are inside the window, and for a single move one of them must be
+		// the moved event
+		stamp++;
+		if (move) {
+			for (int l : incidence[solution.getId(solution.getMoveTo())]) {
+				if (matrices[l].count(start, end) > 1) {
+					stamps[l] = stamp;
+				}
+			}
+		} else {
+			for (int l = 0; l < matrices.length; l++) {
+				if (matrices[l].count(start, end) > 1) {
+					stamps[l] = stamp;
+				}
+			}
+		}
+
+		// reuse the cached scores of the unchanged locations
+		double unchanged = 0;
+		int[] order = new int[matrices.length];
+		int count = 0;
+		for (int l = 0; l < matrices.length; l++) {
+			if (stamps[l] != stamp) {
+				unchanged += matrices[l].baseScore;
+			} else if (bound == Double.POSITIVE_INFINITY) {
+				order[count++] = l;
+			} else {
+				// when bounded, re-score the highest penalty locations first
+				int k = count++;
+				while ((k > 0) && (matrices[order[k - 1]].baseScore < matrices[l].baseScore)) {
+					order[k] = order[k - 1];
+					k--;
+				}
+				order[k] = l;
+			}
+		}
+		if ((count == 0) || (unchanged > bound)) {
+			results.add(Futures.immediateFuture(unchanged));
+			return results;
+		}
+
+		// re-score the changed locations
+		final int first = start;
+		final int last = end;
+		List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(count);
+		long[] changed = new long[count];
+		for (int k = 0; k < count; k++) {
+			final LocationMatrix matrix = matrices[order[k]];
+			changed[k] = costs[order[k]];
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() throws Exception {
+					return matrix.score(solution, first, last);
+				}
+			});
+		}
+		results.add(execute(tasks, changed, unchanged, bound));
+		results.add(Futures.immediateFuture(unchanged));
+		return results;
+	}
+
+	/**
+	 * Score the solution in double precision without using the penalty tables.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @return the penalty.
+	 */
+	protected double exact(final Solution solution) {
+		List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(matrices.length);
+		for (final LocationMatrix matrix : matrices) {
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() throws Exception {
+					return matrix.exact(solution);
+				}
+			});
+		}
+		return Futures.getUnchecked(execute(tasks, costs, SUM));
+	}
+
+	@Override
+	public double[] scoreBatch(final List<Solution> solutions) {
+		double[] scores = super.scoreBatch(solutions);
+		if (single) {
+			for (int i = 0; i < scores.length; i++) {
+				if (scores[i] <= (lowest * (1 + EXACT_MARGIN))) {
+					scores[i] = exact(solutions.get(i).forDataset(context.getDataset()));
+					lowest = Math.min(lowest, scores[i]);
+				}
+			}
+		}
+		return scores;
+	}
+
+	@Override
+	protected List<Future<double[]>> internalScoreBatch(final List<Solution> solutions) {
+		List<Future<double[]>> results = Lists.newArrayList();
+		final int n = solutions.size();
+		if (!incremental) {
+			List<Callable<double[]>> tasks = Lists.newArrayListWithCapacity(matrices.length);
+			for (final LocationMatrix matrix : matrices) {
+				tasks.add(new Callable<double[]>() {
+					@Override
+					public double[] call() throws Exception {
+						double[] scores = new double[n];
+						for (int i = 0; i < n; i++) {
+							scores[i] = matrix.score(solutions.get(i));
+						}
+						return scores;
+					}
+				});
+			}
+			results.add(execute(tasks, costs, SUM_BATCH));
+			return results;
+		}
+
+		// rebase on the parent shared by the block, or the first solution if
+		// there is no base yet
+		Solution parent = solutions.get(0).getParent();
+		for (Solution solution : solutions) {
+			if (solution.getParent() != parent) {
+				parent = null;
+			}
+		}
+		Solution target = base;
+		if ((parent != null) && (parent != base)) {
+			target = parent;
+		} else if (base == null) {
+			target = solutions.get(0);
+		}
+		if (target != base) {
+			base = target;
+			for (Future<Double> f : rebase(base)) {
+				Futures.getUnchecked(f);
+			}
+		}
+
+		// find the window of each solution, candidates that differ from the
+		// base in most positions are scored in full
+		final int[] starts = new int[n];
+		final int[] ends = new int[n];
+		int[] window = new int[2];
+		for (int i = 0; i < n; i++) {
+			window(solutions.get(i), window);
+			if (2 * ((window[1] - window[0]) + 1) > solutions.get(i).size()) {
+				starts[i] = -1;
+			} else {
+				starts[i] = window[0];
+				ends[i] = window[1];
+			}
 		}
+
+		// score the whole block in one task per location
+		List<Callable<double[]>> tasks = Lists.newArrayListWithCapacity(matrices.length);
+		for (final LocationMatrix matrix : matrices) {
+			tasks.add(new Callable<double[]>() {
+				@Override
+				public double[] call() throws Exception {
+					double[] scores = new double[n];
+					for (int i = 0; i < n; i++) {
+						if (starts[i] < 0) {
+							scores[i] = matrix.score(solutions.get(i));
+						} else if (matrix.count(starts[i], ends[i]) > 1) {
+							scores[i] = matrix.score(solutions.get(i), starts[i], ends[i]);
+						} else {
+							scores[i] = matrix.baseScore;
+						}
+					}
+					return scores;
+				}
+			});
+		}
+		results.add(execute(tasks, costs, SUM_BATCH));
+		return results;
+	}
+
+	/**
+	 * Finds the window of positions where the solution differs from the base
+	 * solution.
+	 *
+	 * @param solution
+	 *            the solution.
+	 * @param window
+	 *            receives the first and last changed positions.
+	 * @return true if the solution is a single move from the base.
+	 */
+	protected boolean window(final Solution solution, final int[] window) {
+		int size = solution.size();
+		int start = 0;
+		int end = size - 1;
+		boolean move = (base != null) && (solution.getParent() == base);
+		if (move) {
+			start = Math.min(solution.getMoveFrom(), solution.getMoveTo());
+			end = Math.max(solution.getMoveFrom(), solution.getMoveTo());
+		} else if (base != null) {
+			while ((start < size) && (solution.getId(start) == base.getId(start))) {
+				start++;
+			}
+			while ((end > start) && (solution.getId(end) == base.getId(end))) {
+				end--;
+			}
+		}
+		window[0] = start;
+		window[1] = end;
+		return move;
+	}
+
+	protected List<Future<Double>> rebase(final Solution solution) {
+		List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(matrices.length);
+		for (final LocationMatrix matrix : matrices) {
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() throws Exception {
+					return matrix.rebase(solution);
+				}
+			});
+		}
+		List<Future<Double>> results = Lists.newArrayList();
+		results.add(execute(tasks, costs, SUM));
 		return results;
 	}
 }
@@ -1,14 +1,12 @@
 package org.andrill.conop.core.penalties;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
 import org.andrill.conop.core.Dataset;
@@ -28,20 +26,6 @@ import com.google.common.collect.Maps;
 public class PlacementPenalty extends AbstractParallelPenalty {
 
 	public static class LocationPlacement implements Penalty {
-		private static final IdentityHashMap<BigDecimal, Double> cache = new IdentityHashMap<BigDecimal, Double>() {
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			public Double get(final Object key) {
-				Double value = super.get(key);
-				if (value == null) {
-					BigDecimal k = (BigDecimal) key;
-					value = k.doubleValue();
-					put(k, value);
-				}
-				return value;
-			};
-		};
 		private static final Comparator<BigDecimal> REVERSE = new Comparator<BigDecimal>() {
 			@Override
 			public int compare(final BigDecimal o1, final BigDecimal o2) {
@@ -49,33 +33,67 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 			}
 		};
 		protected int head = 0;
-		protected final Map<BigDecimal, Integer> levelMap;
 		protected final List<BigDecimal> levels;
-		protected final Map<BigDecimal, List<Event>> placed;
+		protected final double[] values;
+		protected final int[] rows;
+		protected final int[] observed;
+		protected final double[] weightUp;
+		protected final double[] weightDown;
+		protected final int[] placement;
+		protected final int[] first;
+		protected final int[] last;
+		protected final int[] next;
 		protected final Location location;
+		protected final Dataset dataset;
 
 		/**
 		 * Create a new placement for the specified location.
 		 *
 		 * @param location
 		 *            the location.
+		 * @param dataset
+		 *            the dataset that assigns the event ids.
 		 */
-		public LocationPlacement(final Location location) {
+		public LocationPlacement(final Location location, final Dataset dataset) {
 			this.location = location;
+			this.dataset = dataset;
 
 			// get our sorted levels
 			levels = Lists.newArrayList(location.getLevels());
 			Collections.sort(levels, REVERSE);
+			values = new double[levels.size()];
+			Map<BigDecimal, Integer> index = Maps.newHashMap();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = levels.get(i).doubleValue();
+				index.put(levels.get(i), i);
+			}
 
-			// create our placement object
-			placed = new TreeMap<BigDecimal, List<Event>>(REVERSE);
-			levelMap = Maps.newTreeMap();
-			int i = 0;
-			for (BigDecimal l : levels) {
-				placed.put(l, new ArrayList<Event>());
-				levelMap.put(l, i++);
+			// resolve the observed level of each event
+			int count = dataset.getEvents().size();
+			rows = new int[count];
+			Arrays.fill(rows, -1);
+			int size = location.getObservations().size();
+			observed = new int[size];
+			weightUp = new double[size];
+			weightDown = new double[size];
+			int row = 0;
+			for (Observation o : location.getObservations()) {
+				int id = dataset.getId(o.getEvent());
+				if (rows[id] < 0) {
+					rows[id] = row;
+					observed[row] = index.get(o.getLevel());
+					weightUp[row] = o.getWeightUp();
+					weightDown[row] = o.getWeightDown();
+					row++;
+				}
 			}
-			head = 0;
+
+			// create our placement arrays
+			placement = new int[count];
+			next = new int[count];
+			first = new int[values.length];
+			last = new int[values.length];
+			reset();
 		}
 
 		/**
@@ -85,25 +103,25 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 		 */
 		public double getPenalty() {
 			double penalty = 0;
-			for (Entry<BigDecimal, List<Event>> entry : placed.entrySet()) {
-				for (Event e : entry.getValue()) {
-					penalty += getPenalty(e, entry.getKey());
+			for (int level = 0; level <= head; level++) {
+				for (int id = first[level]; id >= 0; id = next[id]) {
+					penalty += getPenalty(id, level);
 				}
 			}
 			return penalty;
 		}
 
-		protected double getPenalty(final Event event, final BigDecimal level) {
-			Observation o = location.getObservation(event);
-			if (o == null) {
+		protected double getPenalty(final int id, final int level) {
+			int row = rows[id];
+			if (row < 0) {
 				return 0;
 			}
 
-			double diff = cache.get(level) - cache.get(o.getLevel());
+			double diff = values[level] - values[observed[row]];
 			if (diff < 0) {
-				return Math.abs(diff) * o.getWeightDown();
+				return Math.abs(diff) * weightDown[row];
 			} else {
-				return Math.abs(diff) * o.getWeightUp();
+				return Math.abs(diff) * weightUp[row];
 			}
 		}
 
@@ -115,24 +133,35 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 		 * @return the placement level.
 		 */
 		public BigDecimal getPlacement(final Event e) {
-			for (Entry<BigDecimal, List<Event>> entry : placed.entrySet()) {
-				if (entry.getValue().contains(e)) {
-					return entry.getKey();
-				}
-			}
-			return null;
+			int level = placement[dataset.getId(e)];
+			return (level < 0) ? null : levels.get(level);
 		}
 
 		protected double getShiftPenalty() {
 			double current = 0.0;
 			double shifted = 0.0;
-			for (Event e : placed.get(levels.get(head))) {
-				current += getPenalty(e, levels.get(head));
-				shifted += getPenalty(e, levels.get(Math.max(0, head - 1)));
+			int above = Math.max(0, head - 1);
+			for (int id = first[head]; id >= 0; id = next[id]) {
+				current += getPenalty(id, head);
+				shifted += getPenalty(id, above);
 			}
 			return Math.abs(current - shifted);
 		}
 
+		/**
+		 * Adds the event to the end of the level.
+		 */
+		private void add(final int id, final int level) {
+			placement[id] = level;
+			next[id] = -1;
+			if (last[level] < 0) {
+				first[level] = id;
+			} else {
+				next[last[level]] = id;
+			}
+			last[level] = id;
+		}
+
 		/**
 		 * Place the specified event.
 		 *
@@ -140,35 +169,53 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 		 *            the event.
 		 */
 		public void place(final Event e) {
-			Observation o = location.getObservation(e);
-			if (o == null) {
-				placed.get(levels.get(head)).add(e);
+			place(dataset.getId(e));
+		}
+
+		/**
+		 * Place the event with the specified id.
+		 *
+		 * @param id
+		 *            the event id.
+		 */
+		public void place(final int id) {
+			int row = rows[id];
+			if (row < 0) {
+				add(id, head);
 			} else {
 				// find the optimal position
-				int optimal = levelMap.get(o.getLevel());
+				int optimal = observed[row];
 
 				// if it is below the current position, place it there
 				if (optimal >= head) {
-					placed.get(o.getLevel()).add(e);
+					add(id, optimal);
 					head = optimal;
 				} else {
 					// calculate the cost of placing it at the current head and
-					// the
-					// cost of shifting the head placements up one level
-					double placePenalty = getPenalty(e, levels.get(head));
+					// the cost of shifting the head placements up one level
+					double placePenalty = getPenalty(id, head);
 					double shiftPenalty = getShiftPenalty();
 					while ((placePenalty > shiftPenalty) && (head > 0)) {
-						// shift up
-						List<Event> shifting = placed.get(levels.get(head));
-						placed.get(levels.get(head - 1)).addAll(0, shifting);
-						shifting.clear();
+						// shift up, keeping the shifted events first
+						for (int i = first[head]; i >= 0; i = next[i]) {
+							placement[i] = head - 1;
+						}
+						if (first[head] >= 0) {
+							next[last[head]] = first[head - 1];
+							if (last[head - 1] < 0) {
+								last[head - 1] = last[head];
+							}
+							first[head - 1] = first[head];
+							first[head] = -1;
+							last[head] = -1;
+						}
 						head--;
 
 						// re-calculate our penalties
-						placePenalty = getPenalty(e, levels.get(head));
+						placePenalty = getPenalty(id, head);
 						shiftPenalty = getShiftPenalty();
 					}
-					placed.get(levels.get(head)).add(e);
+					add(id, head);
 				}
 			}
 		}
@@ -177,9 +224,10 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 		 * Resets the placement.
 		 */
 		public void reset() {
-			for (Entry<BigDecimal, List<Event>> e : placed.entrySet()) {
-				e.getValue().clear();
-			}
+			Arrays.fill(placement, -1);
+			Arrays.fill(first, -1);
+			Arrays.fill(last, -1);
+			head = 0;
 		}
 
 		/**
@@ -192,14 +240,17 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 		@Override
 		public double score(final Solution solution) {
 			reset();
-			for (Event e : solution.getEvents()) {
-				place(e);
+			for (int i = 0; i < solution.size(); i++) {
+				place(solution.getId(i));
 			}
 			return getPenalty();
 		}
 	}
 
 	protected Map<Location, LocationPlacement> placements = null;
+	protected long[] costs = null;
+	protected int[] byCost = null;
+	protected LocationPlacement[] ordered = null;
 
 	public PlacementPenalty() {
 		super("Placement Penalty");
@@ -207,18 +258,73 @@ public class PlacementPenalty extends AbstractParallelPenalty {
 
 	@Override
 	public void initialize(final Dataset dataset) {
-		placements = Maps.newHashMap();
-		for (final Location location : dataset.getLocations()) {
-			placements.put(location, new LocationPlacement(location));
+		placements = Maps.newLinkedHashMap();
+		List<Location> locations = dataset.getLocations().asList();
+		costs = new long[locations.size()];
+		for (int l = 0; l < costs.length; l++) {
+			Location location = locations.get(l);
+			placements.put(location, new LocationPlacement(location, dataset));
+			costs[l] = (long) location.getObservations().size() * location.getLevels().size();
+		}
+
+		// order the locations from the most to the least expensive
+		byCost = new int[costs.length];
+		ordered = new LocationPlacement[costs.length];
+		for (int l = 0; l < costs.length; l++) {
+			int k = l;
+			while ((k > 0) && (costs[byCost[k - 1]] < costs[l])) {
+				byCost[k] = byCost[k - 1];
+				k--;
+			}
+			byCost[k] = l;
+		}
+		for (int k = 0; k < costs.length; k++) {
+			ordered[k] = placements.get(locations.get(byCost[k]));
 		}
 	}
 
 	@Override
 	protected List<Future<Double>> internalScore(final Solution solution) {
+		return internalScore(solution, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	protected List<Future<Double>> internalScore(final Solution solution, final double bound) {
+		// score the most expensive locations first
+		List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(ordered.length);
+		long[] sorted = new long[ordered.length];
+		for (int k = 0; k < ordered.length; k++) {
+			final LocationPlacement placement = ordered[k];
+			sorted[k] = costs[byCost[k]];
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() throws Exception {
+					return placement.score(solution);
+				}
+			});
+		}
 		List<Future<Double>> results = Lists.newArrayList();
-		for (final Location location : context.getDataset().getLocations()) {
-			results.add(execute(placements.get(location), solution));
+		results.add(execute(tasks, sorted, 0, bound));
+		return results;
+	}
+
+	@Override
+	protected List<Future<double[]>> internalScoreBatch(final List<Solution> solutions) {
+		List<Callable<double[]>> tasks = Lists.newArrayListWithCapacity(placements.size());
+		for (final LocationPlacement placement : placements.values()) {
+			tasks.add(new Callable<double[]>() {
+				@Override
+				public double[] call() throws Exception {
+					double[] scores = new double[solutions.size()];
+					for (int i = 0; i < scores.length; i++) {
+						scores[i] = placement.score(solutions.get(i));
+					}
+					return scores;
+				}
+			});
 		}
+		List<Future<double[]>> results = Lists.newArrayList();
+		results.add(execute(tasks, costs, SUM_BATCH));
 		return results;
 	}
 }
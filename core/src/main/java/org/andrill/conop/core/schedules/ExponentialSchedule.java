@@ -1,6 +1,11 @@
 package org.andrill.conop.core.schedules;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.andrill.conop.core.AbstractConfigurable;
+import org.andrill.conop.core.Checkpointable;
 import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Solution;
 import org.slf4j.Logger;
@@ -11,7 +16,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Josh Reed (jareed@andrill.org)
  */
-public class ExponentialSchedule extends AbstractConfigurable implements Schedule {
+public class ExponentialSchedule extends AbstractConfigurable implements Schedule, Checkpointable {
 	private static final long DEFAULT_STEPS = 100l;
 	private static final double DEFAULT_DELTA = 0.01;
 	private static final double DEFAULT_INITIAL = 1000.0;
@@ -64,6 +69,20 @@ public class ExponentialSchedule extends AbstractConfigurable implements Schedul
 		}
 	}
 
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		count = in.readLong();
+		current = in.readDouble();
+		score = in.readDouble();
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeDouble(current);
+		out.writeDouble(score);
+	}
+
 	@Override
 	public String toString() {
 		return "Exponential Schedule";
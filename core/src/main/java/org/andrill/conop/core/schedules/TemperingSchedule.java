@@ -1,12 +1,17 @@
 package org.andrill.conop.core.schedules;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.andrill.conop.core.AbstractConfigurable;
+import org.andrill.conop.core.Checkpointable;
 import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Solution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TemperingSchedule extends AbstractConfigurable implements Schedule {
+public class TemperingSchedule extends AbstractConfigurable implements Schedule, Checkpointable {
 	private static final long DEFAULT_STEPS = 100l;
 	private static final double DEFAULT_DELTA = 0.01;
 	private static final double DEFAULT_INITIAL = 1000.0;
@@ -69,6 +74,24 @@ public class TemperingSchedule extends AbstractConfigurable implements Schedule
 		}
 	}
 
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		count = in.readLong();
+		current = in.readDouble();
+		score = in.readDouble();
+		temperTo = in.readDouble();
+		temperWhen = in.readDouble();
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeDouble(current);
+		out.writeDouble(score);
+		out.writeDouble(temperTo);
+		out.writeDouble(temperWhen);
+	}
+
 	@Override
 	public String toString() {
 		return "Tempering Schedule";
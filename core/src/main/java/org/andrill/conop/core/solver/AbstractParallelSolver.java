@@ -0,0 +1,348 @@
+package org.andrill.conop.core.solver;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.andrill.conop.core.Configuration;
+import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.Constraints;
+import org.andrill.conop.core.listeners.Listener;
+import org.andrill.conop.core.mutators.Mutator;
+import org.andrill.conop.core.penalties.BoundedPenalty;
+import org.andrill.conop.core.penalties.ForkablePenalty;
+import org.andrill.conop.core.penalties.Penalty;
+import org.andrill.conop.core.schedules.Schedule;
+import org.andrill.conop.core.util.TimerUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * An abstract solver that runs several annealing chains in parallel, in rounds
+ * of a fixed number of steps. Between rounds, subclasses can exchange
+ * solutions between the chains.
+ *
+ * Each chain has its own mutator and constraints. If the penalty is a
+ * {@link ForkablePenalty}, the chains share its read-only state; otherwise each
+ * chain creates its own penalty.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public abstract class AbstractParallelSolver extends AbstractSolver {
+
+	/**
+	 * A single annealing chain.
+	 */
+	protected class Chain implements Callable<Void> {
+		protected final Constraints constraints;
+		protected final Mutator mutator;
+		protected final Penalty penalty;
+		protected final Schedule schedule;
+		protected final List<Listener> listeners = Lists.newArrayList();
+		protected final Random random = new Random();
+		protected Solution current;
+		protected Solution best;
+		protected double temp;
+		protected int steps;
+		protected long scored = 0;
+		protected long skipped = 0;
+		protected long total = 0;
+		protected long aborted = 0;
+
+		protected Chain(final Constraints constraints, final Mutator mutator, final Penalty penalty,
+				final Schedule schedule) {
+			this.constraints = constraints;
+			this.mutator = mutator;
+			this.penalty = penalty;
+			this.schedule = schedule;
+			setContext(constraints, mutator, penalty, schedule);
+
+			for (Object o : new Object[] { constraints, mutator, penalty, schedule }) {
+				if (o instanceof Listener) {
+					listeners.add((Listener) o);
+				}
+			}
+		}
+
+		@Override
+		public Void call() throws Exception {
+			for (int i = 0; (i < steps) && (temp > 0); i++) {
+				step();
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the current solution of this chain.
+		 *
+		 * @return the current solution.
+		 */
+		public Solution getCurrent() {
+			return current;
+		}
+
+		/**
+		 * Gets the best solution this chain has accepted.
+		 *
+		 * @return the best solution.
+		 */
+		public Solution getLocalBest() {
+			return best;
+		}
+
+		/**
+		 * Gets the temperature of this chain.
+		 *
+		 * @return the temperature.
+		 */
+		public double getTemperature() {
+			return temp;
+		}
+
+		/**
+		 * Sets the current solution of this chain.
+		 *
+		 * @param solution
+		 *            the solution.
+		 */
+		public void setCurrent(final Solution solution) {
+			current = solution;
+			if ((best == null) || (solution.getScore() < best.getScore())) {
+				best = solution;
+			}
+		}
+
+		/**
+		 * Sets the temperature of this chain.
+		 *
+		 * @param temp
+		 *            the temperature.
+		 */
+		public void setTemperature(final double temp) {
+			this.temp = temp;
+		}
+
+		protected void step() {
+			// get a new potential solution, preferring one that satisfies the
+			// constraints
+			Solution next = mutator.mutate(current);
+			total++;
+			for (int i = 1; (i < MAX_ATTEMPTS) && !constraints.isValid(next); i++) {
+				skipped++;
+				next = mutator.mutate(current);
+				total++;
+			}
+
+			// score the solution, stopping early if it would be rejected
+			double threshold = random.nextDouble();
+			boolean partial = false;
+			if (bounded && (penalty instanceof BoundedPenalty)) {
+				double bound = current.getScore() - (temp * Math.log(threshold));
+				partial = score((BoundedPenalty) penalty, next, constraints, bound);
+				if (partial) {
+					aborted++;
+				}
+			} else {
+				next.setScore(penalty.score(next) + getSoftPenalty(constraints, next));
+			}
+			scored++;
+
+			// save as best if the penalty is less; an aborted solution could
+			// still replace an infeasible best with soft constraints
+			if (!partial) {
+				updateBest(next, constraints);
+			}
+
+			// notify our components
+			for (Listener l : listeners) {
+				l.tried(temp, next, getBest());
+			}
+
+			// accept the new solution if it is better than the current
+			// or randomly based on score and temperature
+			if ((next.getScore() < current.getScore())
+					|| (Math.exp(-(next.getScore() - current.getScore()) / temp) > threshold)) {
+				setCurrent(next);
+			}
+
+			// advance our own schedule
+			if (schedule != null) {
+				temp = schedule.next(current);
+			}
+		}
+	}
+
+	private static final boolean DEFAULT_BOUNDED = true;
+	private static final int MAX_ATTEMPTS = 100;
+
+	protected boolean bounded = DEFAULT_BOUNDED;
+	protected List<Chain> chains = Lists.newArrayList();
+	protected ExecutorService pool;
+	protected SolverStats stats = new SolverStats();
+
+	@Override
+	public void configure(final Configuration config) {
+		super.configure(config);
+
+		bounded = config.get("bounded", DEFAULT_BOUNDED);
+		log.debug("Configuring bounded scoring as '{}'", bounded);
+	}
+
+	/**
+	 * Creates the chains and registers the listeners.
+	 *
+	 * @param config
+	 *            the configuration.
+	 * @param count
+	 *            the number of chains.
+	 * @param schedules
+	 *            true if each chain should advance its own schedule.
+	 */
+	protected void createChains(final SolverConfiguration config, final int count, final boolean schedules) {
+		Penalty shared = null;
+		for (int i = 0; i < count; i++) {
+			Penalty penalty;
+			if (shared instanceof ForkablePenalty) {
+				penalty = ((ForkablePenalty) shared).fork();
+			} else {
+				penalty = config.getPenalty();
+				shared = penalty;
+			}
+			Chain chain = new Chain(config.getConstraints(), config.getMutator(), penalty,
+					schedules ? config.getSchedule() : null);
+			if (i == 0) {
+				log.info("Using constraints '{}'", chain.constraints);
+				log.info("Using mutator '{}'", chain.mutator);
+				log.info("Using penalty '{}'", chain.penalty);
+				if (chain.schedule != null) {
+					log.info("Using schedule '{}'", chain.schedule);
+					softScale = chain.schedule.getInitial();
+				}
+			}
+			chains.add(chain);
+		}
+		int threads = Math.max(1, budget.reserve(count));
+		pool = MoreExecutors.getExitingExecutorService((ThreadPoolExecutor) Executors.newFixedThreadPool(threads));
+
+		// other listeners
+		for (Listener l : config.getListeners()) {
+			addListener(l);
+		}
+		context.put(SolverStats.class, stats);
+	}
+
+	/**
+	 * Scores the initial solution, publishes it as the best and starts all
+	 * chains from it.
+	 *
+	 * @param initial
+	 *            the initial solution.
+	 */
+	protected void startChains(final Solution initial) {
+		Chain first = chains.get(0);
+		initial.setScore(first.penalty.score(initial) + getSoftPenalty(first.constraints, initial));
+
+		// the initial solution is the best until a candidate has a full score
+		if (updateBest(initial, first.constraints)) {
+			stats.best = initial.getScore();
+			stats.constraints = isFeasible(first.constraints, initial);
+		}
+		for (Chain chain : chains) {
+			chain.setCurrent(initial);
+			if (chain.schedule != null) {
+				chain.temp = chain.schedule.getInitial();
+			}
+			for (Listener l : chain.listeners) {
+				l.started(initial);
+			}
+		}
+		started(initial);
+	}
+
+	/**
+	 * Runs a round of steps on the chains in parallel and updates the stats.
+	 *
+	 * @param active
+	 *            the chains to run.
+	 * @param steps
+	 *            the number of steps.
+	 * @throws Exception
+	 *             if a chain failed.
+	 */
+	protected void runChains(final List<Chain> active, final int steps) throws Exception {
+		for (Chain chain : active) {
+			chain.steps = steps;
+		}
+		try {
+			for (Future<Void> f : pool.invokeAll(active)) {
+				f.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+
+		// update our stats
+		stats.scored = 0;
+		stats.skipped = 0;
+		stats.total = 0;
+		stats.aborted = 0;
+		for (Chain chain : chains) {
+			stats.scored += chain.scored;
+			stats.skipped += chain.skipped;
+			stats.total += chain.total;
+			stats.aborted += chain.aborted;
+		}
+		if (getBest().getScore() != stats.best) {
+			stats.best = getBest().getScore();
+			stats.constraints = isFeasible(chains.get(0).constraints, getBest());
+		}
+		stats.elapsed = TimerUtils.getCounter();
+
+		// notify listeners
+		for (Listener l : listeners) {
+			for (Chain chain : active) {
+				l.tried(chain.temp, chain.current, getBest());
+			}
+		}
+	}
+
+	/**
+	 * Repairs the best solution if it violates soft constraints, once the
+	 * chains have finished.
+	 */
+	protected void repair() {
+		try {
+			Chain chain = chains.get(0);
+			if (repairBest(chain.penalty, chain.constraints)) {
+				stats.best = getBest().getScore();
+				stats.constraints = isFeasible(chain.constraints, getBest());
+			}
+		} catch (Exception e) {
+			handleError(e);
+		}
+	}
+
+	@Override
+	protected void stopped(final Solution solution) {
+		if (!stopped) {
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+			for (Chain chain : chains) {
+				for (Listener l : chain.listeners) {
+					l.stopped(solution);
+				}
+			}
+		}
+		super.stopped(solution);
+	}
+}
@@ -1,24 +1,35 @@
 package org.andrill.conop.core.solver;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.RejectedExecutionException;
 
 import org.andrill.conop.core.Configurable;
+import org.andrill.conop.core.Configuration;
 import org.andrill.conop.core.Dataset;
 import org.andrill.conop.core.HaltedException;
 import org.andrill.conop.core.Solution;
+import org.andrill.conop.core.constraints.Constraints;
+import org.andrill.conop.core.constraints.SoftConstraints;
 import org.andrill.conop.core.internal.DefaultSolverContext;
 import org.andrill.conop.core.listeners.Listener;
+import org.andrill.conop.core.penalties.BatchPenalty;
+import org.andrill.conop.core.penalties.BoundedPenalty;
+import org.andrill.conop.core.penalties.Penalty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class AbstractSolver implements Solver {
+public abstract class AbstractSolver implements Solver, Configurable {
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	protected Set<Listener> listeners = new CopyOnWriteArraySet<Listener>();
 	protected boolean started = false;
 	protected boolean stopped = false;
 	protected SolverContext context = new DefaultSolverContext();
+	protected int threads = ThreadBudget.available();
+	protected ThreadBudget budget;
+	protected boolean feasibleBest = false;
+	protected double softScale = 1.0;
 
 	/**
 	 * Add a new listener.
@@ -31,10 +42,34 @@ public abstract class AbstractSolver implements Solver {
 		setContext(l);
 	}
 
+	@Override
+	public void configure(final Configuration config) {
+		threads = Math.max(1, config.get("threads", ThreadBudget.available()));
+		log.debug("Configuring thread budget as '{}'", threads);
+	}
+
 	protected Solution getBest() {
 		return context.getBest();
 	}
 
+	/**
+	 * Gets the penalty for the violated constraints of a solution if the
+	 * constraints are {@link SoftConstraints}, scaled by the initial
+	 * temperature that subclasses save in {@link #softScale}.
+	 *
+	 * @param constraints
+	 *            the constraints.
+	 * @param solution
+	 *            the solution.
+	 * @return the penalty, or 0 if the constraints are not soft.
+	 */
+	protected double getSoftPenalty(final Constraints constraints, final Solution solution) {
+		if (constraints instanceof SoftConstraints) {
+			return ((SoftConstraints) constraints).getPenalty(solution, softScale);
+		}
+		return 0;
+	}
+
 	private void addShutdownHook() {
 		// add our shutdown hook so we can make an effort to call stopped()
 		Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -51,7 +86,8 @@ public abstract class AbstractSolver implements Solver {
 		HaltedException halt;
 		if (e instanceof HaltedException) {
 			halt = new HaltedException(e.getMessage(), best);
-		} else if ((e instanceof InterruptedException) || (e instanceof RejectedExecutionException)) {
+		} else if ((e instanceof InterruptedException) || (e instanceof RejectedExecutionException)
+				|| (e.getCause() instanceof InterruptedException)) {
 			halt = new HaltedException("User Interrupt", best);
 		} else {
 			log.error("Unexpected error", e);
@@ -66,6 +102,24 @@ public abstract class AbstractSolver implements Solver {
 		// override
 	}
 
+	/**
+	 * Checks whether a solution satisfies the constraints, counting the
+	 * violations of {@link SoftConstraints} rather than accepting every
+	 * solution.
+	 *
+	 * @param constraints
+	 *            the constraints.
+	 * @param solution
+	 *            the solution.
+	 * @return true if all constraints are satisfied.
+	 */
+	protected boolean isFeasible(final Constraints constraints, final Solution solution) {
+		if (constraints instanceof SoftConstraints) {
+			return ((SoftConstraints) constraints).isFeasible(solution);
+		}
+		return constraints.isValid(solution);
+	}
+
 	/**
 	 * Remove a listener.
 	 *
@@ -76,11 +130,94 @@ public abstract class AbstractSolver implements Solver {
 		listeners.remove(l);
 	}
 
+	/**
+	 * Scores a block of solutions, in a single call if the penalty supports
+	 * {@link BatchPenalty}.
+	 *
+	 * @param penalty
+	 *            the penalty.
+	 * @param solutions
+	 *            the solutions.
+	 */
+	protected void score(final Penalty penalty, final List<Solution> solutions) {
+		if ((solutions.size() > 1) && (penalty instanceof BatchPenalty)) {
+			double[] scores = ((BatchPenalty) penalty).scoreBatch(solutions);
+			for (int i = 0; i < scores.length; i++) {
+				solutions.get(i).setScore(scores[i]);
+			}
+		} else {
+			for (Solution solution : solutions) {
+				solution.setScore(penalty.score(solution));
+			}
+		}
+	}
+
+	/**
+	 * Scores a block of solutions and adds the penalty for the violated
+	 * constraints if they are {@link SoftConstraints}.
+	 *
+	 * @param penalty
+	 *            the penalty.
+	 * @param solutions
+	 *            the solutions.
+	 * @param constraints
+	 *            the constraints.
+	 */
+	protected void score(final Penalty penalty, final List<Solution> solutions, final Constraints constraints) {
+		if (!(constraints instanceof SoftConstraints)) {
+			score(penalty, solutions);
+		} else if ((solutions.size() > 1) && (penalty instanceof BatchPenalty)) {
+			double[] scores = ((BatchPenalty) penalty).scoreBatch(solutions);
+			for (int i = 0; i < scores.length; i++) {
+				Solution solution = solutions.get(i);
+				solution.setScore(scores[i] + getSoftPenalty(constraints, solution));
+			}
+		} else {
+			for (Solution solution : solutions) {
+				solution.setScore(penalty.score(solution) + getSoftPenalty(constraints, solution));
+			}
+		}
+	}
+
+	/**
+	 * Scores a solution, stopping early once its score exceeds the bound and
+	 * adding the penalty for the violated constraints if they are
+	 * {@link SoftConstraints}. The partial score of an aborted solution is
+	 * only a lower bound, so the solution is scored as
+	 * {@link Double#POSITIVE_INFINITY} instead.
+	 *
+	 * @param penalty
+	 *            the penalty.
+	 * @param solution
+	 *            the solution.
+	 * @param constraints
+	 *            the constraints.
+	 * @param bound
+	 *            the bound.
+	 * @return true if scoring was aborted.
+	 */
+	protected boolean score(final BoundedPenalty penalty, final Solution solution, final Constraints constraints,
+			final double bound) {
+		double soft = getSoftPenalty(constraints, solution);
+		double score = penalty.score(solution, bound - soft) + soft;
+		if (score > bound) {
+			solution.setScore(Double.POSITIVE_INFINITY);
+			return true;
+		}
+		solution.setScore(score);
+		return false;
+	}
+
 	protected abstract void solve(Solution initial);
 
 	@Override
 	public SolverContext solve(final SolverConfiguration config, final Dataset dataset) throws HaltedException {
 		addShutdownHook();
+
+		// share a single thread budget with all components
+		budget = new ThreadBudget(threads);
+		context.put(ThreadBudget.class, budget);
+
 		initialize(config);
 
 		context.setDataset(dataset);
@@ -89,6 +226,8 @@ public abstract class AbstractSolver implements Solver {
 		if (initial == null) {
 			log.info("Using random initial solution");
 			initial = Solution.initial(dataset);
+		} else {
+			initial = initial.forDataset(dataset);
 		}
 
 		solve(initial);
@@ -111,6 +250,9 @@ public abstract class AbstractSolver implements Solver {
 			for (Listener l : listeners) {
 				l.stopped(solution);
 			}
+			if (budget != null) {
+				budget.shutdown();
+			}
 		}
 	}
 
@@ -131,11 +273,83 @@ public abstract class AbstractSolver implements Solver {
 		return false;
 	}
 
+	/**
+	 * Saves a solution as best if the penalty is less. With
+	 * {@link SoftConstraints}, the first feasible solution replaces an
+	 * infeasible best whatever its score, and infeasible solutions never
+	 * replace a feasible best.
+	 *
+	 * @param next
+	 *            the solution.
+	 * @param constraints
+	 *            the constraints.
+	 * @return true if the solution is the new best.
+	 */
+	protected boolean updateBest(final Solution next, final Constraints constraints) {
+		if (!(constraints instanceof SoftConstraints)) {
+			return updateBest(next);
+		}
+
+		boolean feasible = ((SoftConstraints) constraints).isFeasible(next);
+		synchronized (this) {
+			if (feasible == feasibleBest) {
+				return updateBest(next);
+			} else if (!feasible) {
+				return false;
+			}
+
+			// publish the first feasible solution
+			feasibleBest = true;
+			Solution best = context.getBest();
+			context.replaceBest(next);
+			if (next.getScore() == 0) {
+				throw new HaltedException("Score reached 0", best);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Replaces an infeasible best solution with its repair if the constraints
+	 * are {@link SoftConstraints}. A search with soft constraints can finish
+	 * trapped a few violations away from a feasible solution when undoing them
+	 * takes several moves that each cost more than they save.
+	 *
+	 * @param penalty
+	 *            the penalty, which must not be in use by another thread.
+	 * @param constraints
+	 *            the constraints.
+	 * @return true if the repaired solution is the new best.
+	 */
+	protected boolean repairBest(final Penalty penalty, final Constraints constraints) {
+		Solution best = getBest();
+		if (!(constraints instanceof SoftConstraints) || feasibleBest || (best == null)) {
+			return false;
+		}
+
+		Solution repaired = ((SoftConstraints) constraints).repair(best);
+		if (repaired == null) {
+			return false;
+		}
+		repaired.setScore(penalty.score(repaired) + getSoftPenalty(constraints, repaired));
+		log.info("Repaired the infeasible best solution from {} to {}", best.getScore(), repaired.getScore());
+		boolean updated = updateBest(repaired, constraints);
+		for (Listener l : listeners) {
+			l.tried(0, repaired, getBest());
+		}
+		return updated;
+	}
+
 	public SolverContext getContext() {
 		return context;
 	}
 
-	protected void setContext(Object... objs) {
+	@Override
+	public void setContext(final SolverContext context) {
+		this.context = context;
+	}
+
+	protected void setContext(final Object... objs) {
 		for (Object o : objs) {
 			if (o instanceof Configurable) {
 				((Configurable) o).setContext(context);
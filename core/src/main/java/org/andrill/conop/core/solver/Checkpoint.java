@@ -0,0 +1,221 @@
+package org.andrill.conop.core.solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.andrill.conop.core.Checkpointable;
+import org.andrill.conop.core.Dataset;
+import org.andrill.conop.core.Solution;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A binary checkpoint of the state of a solver.
+ *
+ * A checkpoint is a set of named sections, each holding the binary state of
+ * one component. The file starts with a magic number and a version and ends
+ * with a CRC32 of the contents. It is written to a temporary file, synced and
+ * then moved over the previous checkpoint, so a crash never leaves a partial
+ * checkpoint behind.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class Checkpoint {
+	private static final int MAGIC = 0x434B5054;
+	private static final int VERSION = 1;
+
+	/**
+	 * Reads a checkpoint from a file.
+	 *
+	 * @param file
+	 *            the file.
+	 * @return the checkpoint.
+	 * @throws IOException
+	 *             if the file could not be read or is not a valid checkpoint.
+	 */
+	public static Checkpoint read(final File file) throws IOException {
+		Checkpoint checkpoint = new Checkpoint();
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(
+				new FileInputStream(file)), crc))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a checkpoint: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				checkpoint.sections.put(name, bytes);
+			}
+			long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("Corrupt checkpoint: " + file);
+			}
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Reads a solution saved with {@link #writeSolution(DataOutput, Solution)}.
+	 *
+	 * @param in
+	 *            the input.
+	 * @param dataset
+	 *            the dataset the solution belongs to.
+	 * @return the solution.
+	 * @throws IOException
+	 *             if the solution could not be read.
+	 */
+	public static Solution readSolution(final DataInput in, final Dataset dataset) throws IOException {
+		int[] order = new int[in.readInt()];
+		if (order.length != dataset.getEvents().size()) {
+			throw new IOException("Checkpoint has " + order.length + " events but the dataset has "
+					+ dataset.getEvents().size());
+		}
+		for (int i = 0; i < order.length; i++) {
+			order[i] = in.readInt();
+		}
+		Solution solution = new Solution(dataset, order);
+		double score = in.readDouble();
+		if (score >= 0) {
+			solution.setScore(score);
+		}
+		return solution;
+	}
+
+	/**
+	 * Writes a solution as its array of event ids and its score.
+	 *
+	 * @param out
+	 *            the output.
+	 * @param solution
+	 *            the solution, which must be indexed by the solver's dataset.
+	 * @throws IOException
+	 *             if the solution could not be written.
+	 */
+	public static void writeSolution(final DataOutput out, final Solution solution) throws IOException {
+		out.writeInt(solution.size());
+		for (int i = 0; i < solution.size(); i++) {
+			out.writeInt(solution.getId(i));
+		}
+		out.writeDouble(solution.getScore());
+	}
+
+	protected final Map<String, byte[]> sections = Maps.newLinkedHashMap();
+
+	/**
+	 * Gets a section of this checkpoint.
+	 *
+	 * @param name
+	 *            the name of the section.
+	 * @return the input for the section or null if there is no such section.
+	 */
+	public DataInput get(final String name) {
+		byte[] bytes = sections.get(name);
+		return (bytes == null) ? null : new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Adds a section to this checkpoint.
+	 *
+	 * @param name
+	 *            the name of the section.
+	 * @param bytes
+	 *            the contents.
+	 */
+	public void put(final String name, final byte[] bytes) {
+		sections.put(name, bytes);
+	}
+
+	/**
+	 * Restores an object from a section of this checkpoint, if the object is
+	 * {@link Checkpointable} and the section exists.
+	 *
+	 * @param name
+	 *            the name of the section.
+	 * @param obj
+	 *            the object.
+	 * @return true if the object was restored.
+	 * @throws IOException
+	 *             if the section could not be read.
+	 */
+	public boolean restore(final String name, final Object obj) throws IOException {
+		DataInput in = get(name);
+		if ((in == null) || !(obj instanceof Checkpointable)) {
+			return false;
+		}
+		((Checkpointable) obj).restore(in);
+		return true;
+	}
+
+	/**
+	 * Saves an object to a section of this checkpoint, if the object is
+	 * {@link Checkpointable}.
+	 *
+	 * @param name
+	 *            the name of the section.
+	 * @param obj
+	 *            the object.
+	 * @throws IOException
+	 *             if the object could not be saved.
+	 */
+	public void save(final String name, final Object obj) throws IOException {
+		if (obj instanceof Checkpointable) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			((Checkpointable) obj).save(out);
+			out.flush();
+			put(name, bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * Atomically writes this checkpoint to a file.
+	 *
+	 * @param file
+	 *            the file.
+	 * @throws IOException
+	 *             if the checkpoint could not be written.
+	 */
+	public void write(final File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		CRC32 crc = new CRC32();
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fos), crc))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sections.size());
+			for (Entry<String, byte[]> e : sections.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeInt(e.getValue().length);
+				out.write(e.getValue());
+			}
+			out.writeLong(crc.getValue());
+			out.flush();
+			fos.getFD().sync();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -27,6 +27,15 @@ public interface SolverContext {
 	 */
 	Solution setBest(Solution best);
 
+	/**
+	 * Replaces the best solution, even if the new solution has a higher score.
+	 * 
+	 * @param best
+	 *            the best solution.
+	 * @return the best solution.
+	 */
+	Solution replaceBest(Solution best);
+
 	/**
 	 * Gets the dataset.
 	 * 
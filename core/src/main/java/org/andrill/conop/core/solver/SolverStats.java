@@ -1,11 +1,45 @@
 package org.andrill.conop.core.solver;
 
-public class SolverStats {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.andrill.conop.core.Checkpointable;
+
+public class SolverStats implements Checkpointable {
 	public long scored = 0;
 	public long skipped = 0;
+	public long aborted = 0;
 	public long total = 0;
 	public long elapsed = 0;
 	public double best = Double.MAX_VALUE;
 	public double temperature = Double.MAX_VALUE;
 	public boolean constraints = false;
+	public double utilization = -1;
+
+	@Override
+	public void restore(final DataInput in) throws IOException {
+		scored = in.readLong();
+		skipped = in.readLong();
+		aborted = in.readLong();
+		total = in.readLong();
+		elapsed = in.readLong();
+		best = in.readDouble();
+		temperature = in.readDouble();
+		constraints = in.readBoolean();
+		utilization = in.readDouble();
+	}
+
+	@Override
+	public void save(final DataOutput out) throws IOException {
+		out.writeLong(scored);
+		out.writeLong(skipped);
+		out.writeLong(aborted);
+		out.writeLong(total);
+		out.writeLong(elapsed);
+		out.writeDouble(best);
+		out.writeDouble(temperature);
+		out.writeBoolean(constraints);
+		out.writeDouble(utilization);
+	}
 }
@@ -0,0 +1,169 @@
+package org.andrill.conop.core.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * The number of compute threads available to a solver run.
+ *
+ * The solver creates the budget and publishes it in the {@link SolverContext}.
+ * The solver reserves threads for its own workers first, and nested parallel
+ * components such as penalties size their pools from what is left, so the run
+ * never uses more threads than the budget. Background work such as
+ * asynchronous listeners and checkpoint writes shares a single thread that is
+ * not counted against the budget.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ThreadBudget {
+	/**
+	 * The system property that overrides the number of available threads.
+	 */
+	public static final String PROPERTY = "conop.threads";
+
+	/**
+	 * Gets the number of threads available to this process, limited by the CPU
+	 * quota of the container if there is one.
+	 *
+	 * @return the number of threads.
+	 */
+	public static int available() {
+		Integer configured = Integer.getInteger(PROPERTY);
+		if ((configured != null) && (configured > 0)) {
+			return configured;
+		}
+		int procs = Runtime.getRuntime().availableProcessors();
+		int quota = quota();
+		return (quota > 0) ? Math.min(procs, quota) : procs;
+	}
+
+	/**
+	 * Gets the CPU quota of the cgroup (v2 or v1), rounded up to whole CPUs.
+	 *
+	 * @return the quota or -1 if there is none.
+	 */
+	protected static int quota() {
+		try {
+			File v2 = new File("/sys/fs/cgroup/cpu.max");
+			if (v2.exists()) {
+				String[] max = Files.readFirstLine(v2, Charsets.UTF_8).trim().split("\\s+");
+				if ((max.length == 2) && !"max".equals(max[0])) {
+					return cpus(Long.parseLong(max[0]), Long.parseLong(max[1]));
+				}
+				return -1;
+			}
+			File quota = new File("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+			File period = new File("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+			if (quota.exists() && period.exists()) {
+				return cpus(Long.parseLong(Files.readFirstLine(quota, Charsets.UTF_8).trim()),
+						Long.parseLong(Files.readFirstLine(period, Charsets.UTF_8).trim()));
+			}
+		} catch (IOException | NumberFormatException e) {
+			// no usable quota
+		}
+		return -1;
+	}
+
+	private static int cpus(final long quota, final long period) {
+		if ((quota <= 0) || (period <= 0)) {
+			return -1;
+		}
+		return (int) Math.max(1, (quota + period - 1) / period);
+	}
+
+	protected final int threads;
+	protected final AtomicInteger free;
+	protected ExecutorService background;
+
+	/**
+	 * Create a new ThreadBudget.
+	 *
+	 * @param threads
+	 *            the number of compute threads.
+	 */
+	public ThreadBudget(final int threads) {
+		this.threads = Math.max(1, threads);
+		free = new AtomicInteger(this.threads);
+	}
+
+	/**
+	 * Gets the executor for background work, which runs on a single thread
+	 * outside of the budget.
+	 *
+	 * @return the executor.
+	 */
+	public synchronized ExecutorService getBackground() {
+		if (background == null) {
+			background = MoreExecutors.getExitingExecutorService((ThreadPoolExecutor) Executors
+					.newFixedThreadPool(1));
+		}
+		return background;
+	}
+
+	/**
+	 * Gets the number of threads that have not been reserved.
+	 *
+	 * @return the number of free threads.
+	 */
+	public int getFree() {
+		return free.get();
+	}
+
+	/**
+	 * Gets the total number of threads in this budget.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Returns reserved threads to the budget.
+	 *
+	 * @param count
+	 *            the number of threads.
+	 */
+	public void release(final int count) {
+		free.addAndGet(count);
+	}
+
+	/**
+	 * Reserves up to the specified number of threads.
+	 *
+	 * @param wanted
+	 *            the number of threads wanted.
+	 * @return the number of threads reserved, which may be 0.
+	 */
+	public int reserve(final int wanted) {
+		while (true) {
+			int available = free.get();
+			int granted = Math.max(0, Math.min(wanted, available));
+			if (free.compareAndSet(available, available - granted)) {
+				return granted;
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the background executor once its pending work is done.
+	 */
+	public synchronized void shutdown() {
+		if (background != null) {
+			background.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Thread Budget (" + threads + " threads)";
+	}
+}
@@ -0,0 +1,76 @@
+package org.andrill.conop.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated, lock-free ring buffer for a single producer and a single
+ * consumer.
+ *
+ * The producer is the only writer of the tail and the consumer the only
+ * writer of the head, so each side publishes its position with an ordered
+ * store and neither side ever takes a lock.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class RingBuffer<T> {
+	protected final Object[] ring;
+	protected final int mask;
+	protected final AtomicLong head = new AtomicLong(0);
+	protected final AtomicLong tail = new AtomicLong(0);
+
+	/**
+	 * Create a new RingBuffer.
+	 *
+	 * @param count
+	 *            the minimum capacity, which is rounded up to a power of two.
+	 */
+	public RingBuffer(final int count) {
+		int capacity = Integer.highestOneBit(Math.max(2, count - 1)) << 1;
+		ring = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Checks whether the buffer is empty.
+	 *
+	 * @return true if there is nothing to poll.
+	 */
+	public boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+
+	/**
+	 * Adds an element if there is room. Must only be called by the producer.
+	 *
+	 * @param element
+	 *            the element.
+	 * @return true if the element was added, false if the buffer was full.
+	 */
+	public boolean offer(final T element) {
+		long t = tail.get();
+		if ((t - head.get()) == ring.length) {
+			return false;
+		}
+		ring[(int) (t & mask)] = element;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element. Must only be called by the consumer.
+	 *
+	 * @return the element or null if the buffer was empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long h = head.get();
+		if (tail.get() == h) {
+			return null;
+		}
+		int slot = (int) (h & mask);
+		T element = (T) ring[slot];
+		ring[slot] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+}
@@ -41,4 +41,70 @@ class SolutionSpec extends Specification {
 		then: 'the position matches'
 		solution.getPosition(event) == 0
 	}
+
+	def "ids and positions are a view of the events"() {
+		given: 'a solution'
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+
+		expect: 'ids map to events and positions'
+		(0..<solution.size()).each { i ->
+			assert dataset.getEvent(solution.getId(i)) == solution.getEvent(i)
+			assert solution.getPosition(solution.getId(i)) == i
+			assert solution.getPosition(solution.getEvent(i)) == i
+		}
+	}
+
+	def "moving an event shifts the events in between"() {
+		given: 'a solution'
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+		def events = solution.events
+
+		expect: 'moving down'
+		solution.move(0, 3).events == [events[1], events[2], events[3], events[0], events[4]]
+
+		and: 'moving up'
+		solution.move(4, 1).events == [events[0], events[4], events[1], events[2], events[3]]
+
+		and: 'the original is unchanged'
+		solution.events == events
+	}
+
+	def "a solution from a list of events can be indexed by a dataset"() {
+		given: 'a solution from a plain list'
+		def solution = new Solution(DatasetFixtures.simpleDatasetWorst(dataset).events)
+
+		when:
+		def indexed = solution.forDataset(dataset)
+
+		then: 'same order using the dataset ids'
+		indexed.dataset == dataset
+		indexed.events == solution.events
+		indexed.forDataset(dataset).is(indexed)
+	}
+
+	def "a moved solution records the move until it becomes a parent"() {
+		given: 'a solution'
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+
+		when: 'move an event'
+		def moved = solution.move(1, 3)
+
+		then: 'the move is recorded'
+		moved.parent.is(solution)
+		moved.moveFrom == 1
+		moved.moveTo == 3
+
+		and: 'positions are relative to the parent'
+		dataset.events.each { e ->
+			assert moved.getEvent(moved.getPosition(e)) == e
+		}
+
+		when: 'moved again'
+		def again = moved.move(3, 0)
+
+		then: 'the parent is released'
+		moved.parent == null
+		again.parent.is(moved)
+		again.events == [solution.events[1], solution.events[0], solution.events[2], solution.events[3], solution.events[4]]
+	}
 }
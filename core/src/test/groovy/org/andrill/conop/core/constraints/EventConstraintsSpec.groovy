@@ -6,6 +6,8 @@ import org.andrill.conop.core.internal.DefaultEvent
 import org.andrill.conop.core.internal.DefaultLocation
 import org.andrill.conop.core.internal.DefaultObservation
 import org.andrill.conop.core.internal.DefaultSolverContext
+import org.andrill.conop.core.solver.ThreadBudget
+import org.andrill.conop.core.test.DatasetFixtures
 
 import spock.lang.Specification
 
@@ -48,6 +50,95 @@ class EventConstraintsSpec extends Specification {
 		!checker.isValid(solution2)
 	}
 
+	def "checking single moves agrees with checking every constraint"() {
+		given: "a dataset with taxa constraints"
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: "an EventChecker"
+		def checker = new EventConstraints()
+		checker.configure(new Configuration([:]))
+		checker.context = context
+
+		expect: "every move from a valid and an invalid solution"
+		[
+			DatasetFixtures.simpleDatasetBest(dataset),
+			DatasetFixtures.simpleDatasetWorst(dataset)
+		].every { parent ->
+			(0..<parent.size()).every { from ->
+				(0..<parent.size()).every { to ->
+					def move = parent.move(from, to)
+					checker.isValid(move) == checker.checkAll(move)
+				}
+			}
+		}
+	}
+
+	def "inferred constraints are transitively reduced"() {
+		given: "three events in the same order in two sections"
+		def top = new DefaultEvent("Top")
+		def middle = new DefaultEvent("Middle")
+		def bottom = new DefaultEvent("Bottom")
+		def dataset = new DefaultDataset((1..2).collect {
+			new DefaultLocation("Section ${it}", [
+				new DefaultObservation(top, 30, 1, 1),
+				new DefaultObservation(middle, 20, 1, 1),
+				new DefaultObservation(bottom, 10, 1, 1)
+			])
+		})
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		when: "infer with and without reduction"
+		def full = new EventConstraints()
+		full.configure(new Configuration([infer: true, reduce: false]))
+		full.context = context
+		def reduced = new EventConstraints()
+		reduced.configure(new Configuration([infer: true]))
+		reduced.context = context
+
+		then: "the implied constraint is removed"
+		full.predecessors.sum { it.length } == 3
+		reduced.predecessors.sum { it.length } == 2
+
+		and: "both accept the same solutions"
+		[[top, middle, bottom], [top, bottom, middle], [middle, top, bottom], [bottom, middle, top]].every {
+			def solution = new Solution(dataset, it)
+			full.isValid(solution) == reduced.isValid(solution)
+		}
+	}
+
+	def "inference borrows threads from the budget and returns them"() {
+		given: "a dataset with a thread budget that the solver uses in part"
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+		def budget = new ThreadBudget(3)
+		budget.reserve(1)
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+		context.put(ThreadBudget, budget)
+
+		and: "a context without a budget"
+		def plain = new DefaultSolverContext()
+		plain.dataset = dataset
+
+		when: "infer with and without the budget"
+		def borrowed = new EventConstraints()
+		borrowed.configure(new Configuration([infer: true, support: 2]))
+		borrowed.context = context
+		borrowed.compile()
+		def unbudgeted = new EventConstraints()
+		unbudgeted.configure(new Configuration([infer: true, support: 2]))
+		unbudgeted.context = plain
+		unbudgeted.compile()
+
+		then: "the same constraints"
+		borrowed.predecessors == unbudgeted.predecessors
+
+		and: "the borrowed threads are free again"
+		budget.free == 2
+	}
+
 	def "toString returns as expected"() {
 		expect:
 		new EventConstraints().toString() == "Event Constraints"
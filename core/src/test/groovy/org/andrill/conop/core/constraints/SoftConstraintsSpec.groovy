@@ -0,0 +1,223 @@
+package org.andrill.conop.core.constraints
+
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.internal.DefaultSolverConfiguration
+import org.andrill.conop.core.internal.DefaultSolverContext
+import org.andrill.conop.core.internal.IslandSolver
+import org.andrill.conop.core.internal.QueueSolver
+import org.andrill.conop.core.internal.StandardSolver
+import org.andrill.conop.core.internal.TemperingSolver
+import org.andrill.conop.core.listeners.AbstractListener
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.SolverStats
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class SoftConstraintsSpec extends Specification {
+
+	def "counting single moves agrees with counting every constraint"() {
+		given: "a dataset with taxa constraints"
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: "soft constraints"
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([:]))
+		constraints.context = context
+
+		expect: "every move from a feasible and an infeasible solution is valid and counted correctly"
+		[
+			DatasetFixtures.simpleDatasetBest(dataset),
+			DatasetFixtures.simpleDatasetWorst(dataset)
+		].every { parent ->
+			(0..<parent.size()).every { from ->
+				(0..<parent.size()).every { to ->
+					def move = parent.move(from, to)
+					constraints.isValid(move) && (constraints.getViolations(move) == constraints.countAll(move))
+				}
+			}
+		}
+	}
+
+	def "the penalty is the weight per violation times the temperature"() {
+		given: "a dataset with taxa constraints"
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: "soft constraints"
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([weight: 10]))
+		constraints.context = context
+
+		and: "a feasible and an infeasible solution"
+		def feasible = DatasetFixtures.simpleDatasetBest(dataset)
+		def infeasible = DatasetFixtures.simpleDatasetWorst(dataset)
+		def violations = constraints.getViolations(infeasible)
+
+		expect:
+		constraints.isFeasible(feasible)
+		constraints.getPenalty(feasible, 1) == 0
+		violations > 0
+		constraints.getPenalty(infeasible, 1) == 10 * violations
+		constraints.getPenalty(infeasible, 100) == 1000 * violations
+	}
+
+	def "the solver scores every candidate"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration with soft inferred constraints'
+		def config = new DefaultSolverConfiguration()
+		config.configureConstraints(SoftConstraints, [infer: true, support: 2])
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(StandardSolver, [:])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'no candidate was skipped'
+		def stats = context.get(SolverStats)
+		stats.scored > 0
+		stats.skipped == 0
+	}
+
+	def "bounded scoring only publishes best solutions with their full score"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration with soft inferred constraints and bounded scoring'
+		def config = new DefaultSolverConfiguration()
+		config.configureConstraints(SoftConstraints, [infer: true, support: 2])
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(solver, options + [bounded: true])
+
+		and: 'the same constraints to check the best solution with'
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([infer: true, support: 2]))
+		constraints.context = new DefaultSolverContext(dataset: dataset)
+
+		and: 'a listener that records every best solution'
+		def bests = [] as Set
+		def instance = config.solver
+		instance.addListener(new AbstractListener() {
+			void tried(double temp, Solution current, Solution best) {
+				bests << best
+			}
+		})
+
+		when: 'solve'
+		def context = instance.solve(config, dataset)
+
+		then: 'some candidates stopped scoring early'
+		context.get(SolverStats).aborted > 0
+
+		and: 'the listeners always saw a best solution'
+		!bests.contains(null)
+
+		and: 'every best solution had its full score'
+		def penalty = new MatrixPenalty(context: context, incremental: false)
+		bests.every { best ->
+			Math.abs(best.score - (penalty.score(best) + constraints.getPenalty(best, 100))) < 1e-6
+		}
+
+		where:
+		solver          | options
+		StandardSolver  | [:]
+		IslandSolver    | [islands: 3, migration: 25]
+		TemperingSolver | [replicas: 3, exchange: 20]
+	}
+
+	def "repairing a solution satisfies the constraints"() {
+		given: "a dataset with inferred constraints"
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: "soft constraints"
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([infer: true, support: 2]))
+		constraints.context = context
+
+		and: "an infeasible solution"
+		def solution = (1..100).collect { Solution.initial(dataset) }.find { !constraints.isFeasible(it) }
+
+		when: "repair the solution"
+		def repaired = constraints.repair(solution)
+
+		then: "the same events satisfy every constraint"
+		constraints.isFeasible(repaired)
+		(0..<repaired.size()).collect { repaired.getId(it) }.sort() == (0..<solution.size()).collect { it }
+
+		and: "a feasible solution is unchanged"
+		def again = constraints.repair(repaired)
+		(0..<again.size()).every { again.getId(it) == repaired.getId(it) }
+	}
+
+	def "the solver finds a feasible best solution"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration with soft inferred constraints'
+		def config = new DefaultSolverConfiguration()
+		config.configureConstraints(SoftConstraints, [infer: true, support: 2])
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 50])
+		config.configureSolver(solver, options)
+
+		and: 'the same constraints to check the best solution with'
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([infer: true, support: 2]))
+		constraints.context = new DefaultSolverContext(dataset: dataset)
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'the best solution satisfies every constraint'
+		constraints.isFeasible(context.best)
+		context.get(SolverStats).constraints
+
+		where:
+		solver          | options
+		StandardSolver  | [:]
+		QueueSolver     | [threads: 2]
+		QueueSolver     | [threads: 2, speculative: true]
+		IslandSolver    | [islands: 3, migration: 25]
+		TemperingSolver | [replicas: 3, exchange: 20]
+	}
+
+	def "only a feasible solution replaces a feasible best"() {
+		given: "a solver for a dataset with taxa constraints"
+		def dataset = DatasetFixtures.simpleDataset()
+		def solver = new StandardSolver()
+		solver.context.dataset = dataset
+
+		and: "soft constraints"
+		def constraints = new SoftConstraints()
+		constraints.configure(new Configuration([:]))
+		constraints.context = solver.context
+
+		and: "feasible and infeasible solutions"
+		def infeasible = DatasetFixtures.simpleDatasetWorst(dataset)
+		infeasible.score = 1
+		def feasible = DatasetFixtures.simpleDatasetBest(dataset)
+		feasible.score = 10
+		def better = DatasetFixtures.simpleDatasetWorst(dataset)
+		better.score = 2
+
+		expect: "an infeasible solution is best until a feasible one is found"
+		solver.updateBest(infeasible, constraints)
+		solver.updateBest(feasible, constraints)
+		solver.context.best.is(feasible)
+
+		and: "infeasible solutions no longer replace it"
+		!solver.updateBest(better, constraints)
+		solver.context.best.is(feasible)
+	}
+}
@@ -0,0 +1,33 @@
+package org.andrill.conop.core.internal
+
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.SolverStats
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class IslandSolverSpec extends Specification {
+
+	def "solving with islands improves on the initial solution"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(IslandSolver, [islands: 3, migration: 25])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'every island ran its schedule'
+		def stats = context.get(SolverStats)
+		stats.scored >= 3 * 20
+
+		and: 'the best solution is better than the initial one'
+		context.best.score < new MatrixPenalty(context: context).score(Solution.initial(dataset))
+	}
+}
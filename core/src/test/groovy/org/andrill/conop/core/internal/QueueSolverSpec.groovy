@@ -0,0 +1,109 @@
+package org.andrill.conop.core.internal
+
+import org.andrill.conop.core.HaltedException
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.penalties.Penalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.SolverStats
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+class QueueSolverSpec extends Specification {
+
+	static class FailingPenalty implements Penalty {
+		double score(Solution solution) {
+			throw new IllegalStateException('penalty failed')
+		}
+	}
+
+	def "speculative solving improves on the initial solution"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(QueueSolver, [speculative: true])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'candidates were scored and the rest of a round discarded after an acceptance'
+		def stats = context.get(SolverStats)
+		stats.scored > 0
+		stats.total >= stats.scored
+
+		and: 'the best solution is better than the initial one'
+		context.best.score < new MatrixPenalty(context: context).score(Solution.initial(dataset))
+	}
+
+	def "scorers generate their own candidates and report their utilization"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(QueueSolver, [batch: 2])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'candidates were generated and scored'
+		def stats = context.get(SolverStats)
+		stats.scored > 0
+		stats.total >= stats.scored
+
+		and: 'the utilization was measured'
+		stats.utilization > 0
+		stats.utilization <= 1
+
+		and: 'the best solution is better than the initial one'
+		context.best.score < new MatrixPenalty(context: context).score(Solution.initial(dataset))
+	}
+
+	def "scorers leave a thread for the solver"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+
+		and: 'a configuration with a budget of 3 threads'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 5])
+		config.configureSolver(QueueSolver, [threads: 3])
+
+		when: 'solve'
+		def solver = config.solver
+		solver.solve(config, dataset)
+
+		then: 'two scorers generate the candidates'
+		solver.scorers.size() == 2
+
+		and: 'the unused mutator of the solver is not a listener'
+		!solver.listeners.contains(solver.mutator)
+	}
+
+	@Timeout(30)
+	def "a failing scorer stops the run"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration with a penalty that fails'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(FailingPenalty, [:])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(QueueSolver, [threads: 3])
+
+		when: 'solve'
+		config.solver.solve(config, dataset)
+
+		then: 'the failure halts the run'
+		def e = thrown(HaltedException)
+		e.message.contains('penalty failed')
+	}
+}
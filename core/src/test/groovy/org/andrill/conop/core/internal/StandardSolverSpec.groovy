@@ -0,0 +1,137 @@
+package org.andrill.conop.core.internal
+
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.listeners.AbstractListener
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.SolverStats
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class StandardSolverSpec extends Specification {
+
+	def "solving improves on the initial solution with each generator"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(StandardSolver, [generator: generator])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'candidates were scored'
+		context.get(SolverStats).scored > 0
+
+		and: 'the best solution is better than the initial one'
+		context.best.score < new MatrixPenalty(context: context).score(Solution.initial(dataset))
+
+		where:
+		generator << ['queue', 'inline', 'ring']
+	}
+
+	def "an unknown generator is rejected"() {
+		when: 'configure'
+		def config = new DefaultSolverConfiguration()
+		config.configureSolver(StandardSolver, [generator: 'magic'])
+		config.solver
+
+		then: 'an error'
+		thrown(IllegalArgumentException)
+	}
+
+	def "polishing finishes at a local optimum"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration that cools quickly'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 5, steps: 5])
+		config.configureSolver(StandardSolver, [polish: true])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'no single insertion improves the best solution'
+		def penalty = new MatrixPenalty(context: context, incremental: false)
+		def best = context.best
+		(0..<best.size()).every { from ->
+			(0..<best.size()).every { to ->
+				from == to || penalty.score(best.move(from, to)) >= best.score - 1e-6
+			}
+		}
+	}
+
+	def "a batch is discarded after an acceptance"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration that scores blocks'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(StandardSolver, [batch: 4])
+
+		and: 'a listener that records the parent of each candidate'
+		def parents = []
+		def tried = []
+		def solver = config.solver
+		solver.addListener(new AbstractListener() {
+			void tried(double temp, Solution current, Solution best) {
+				tried << current
+				parents << current.parent
+			}
+		})
+
+		when: 'solve'
+		solver.solve(config, dataset)
+
+		then: 'candidates after an acceptance are neighbours of the accepted solution'
+		tried.size() > 100
+		(1..<tried.size()).every { i ->
+			parents[i].is(parents[i - 1]) || parents[i].is(tried[i - 1])
+		}
+	}
+
+	def "listeners only see exact scores or aborted candidates"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration with bounded scoring'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(solver, options + [bounded: true])
+
+		and: 'a listener that records every candidate'
+		def tried = []
+		def instance = config.solver
+		instance.addListener(new AbstractListener() {
+			void tried(double temp, Solution current, Solution best) {
+				tried << current
+			}
+		})
+
+		when: 'solve'
+		def context = instance.solve(config, dataset)
+
+		then: 'every candidate was flagged as aborted or had its full score'
+		def penalty = new MatrixPenalty(context: context, incremental: false)
+		!tried.empty
+		tried.every { (it.score == Double.POSITIVE_INFINITY) || (Math.abs(it.score - penalty.score(it)) < 1e-6) }
+
+		and: 'the aborted candidates were flagged if the listeners saw every candidate'
+		!everyCandidate || (tried.count { it.score == Double.POSITIVE_INFINITY } == context.get(SolverStats).aborted)
+
+		where:
+		solver          | options                      | everyCandidate
+		StandardSolver  | [:]                          | true
+		IslandSolver    | [islands: 3, migration: 25]  | false
+		TemperingSolver | [replicas: 3, exchange: 20]  | false
+	}
+}
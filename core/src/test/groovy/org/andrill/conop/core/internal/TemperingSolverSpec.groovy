@@ -0,0 +1,34 @@
+package org.andrill.conop.core.internal
+
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.SolverStats
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class TemperingSolverSpec extends Specification {
+
+	def "solving with replicas improves on the initial solution"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a configuration'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 5])
+		config.configureSolver(TemperingSolver, [replicas: 3, exchange: 20])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'all replicas were scored'
+		def stats = context.get(SolverStats)
+		stats.scored > 0
+		stats.scored % 60 == 0
+
+		and: 'the best solution is better than the initial one'
+		context.best.score < new MatrixPenalty(context: context).score(Solution.initial(dataset))
+	}
+}
@@ -0,0 +1,58 @@
+package org.andrill.conop.core.mutators
+
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.constraints.EventConstraints
+import org.andrill.conop.core.internal.DefaultSolverContext
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class ConstrainedMutatorSpec extends Specification {
+
+	def "every candidate from a valid solution is valid"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'event constraints'
+		def constraints = new EventConstraints()
+		constraints.configure(new Configuration([:]))
+		constraints.context = context
+
+		and: 'a mutator'
+		def mutator = new ConstrainedMutator()
+		mutator.configure(new Configuration([:]))
+		mutator.context = context
+
+		and: 'a valid solution'
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+		assert constraints.isValid(solution)
+
+		expect: 'a walk of candidates never breaks the constraints'
+		(1..1000).every {
+			def next = mutator.mutate(solution)
+			solution = next
+			next.events != null && constraints.isValid(next)
+		}
+	}
+
+	def "moves events randomly without event constraints"() {
+		given: 'a mutator without constraints'
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+		def mutator = new ConstrainedMutator()
+		mutator.context = context
+
+		and: 'a solution'
+		def solution = Solution.initial(dataset)
+
+		when: 'mutate'
+		def mutated = mutator.mutate(solution)
+
+		then: 'solution differs'
+		mutated.events != solution.events
+	}
+}
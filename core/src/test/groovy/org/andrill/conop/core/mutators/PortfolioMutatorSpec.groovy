@@ -0,0 +1,120 @@
+package org.andrill.conop.core.mutators
+
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class PortfolioMutatorSpec extends Specification {
+
+	def "every operator rearranges the events"() {
+		given: 'a dataset with taxa'
+		def dataset = DatasetFixtures.simpleDataset()
+		def mutator = new PortfolioMutator()
+		mutator.configure(new Configuration([:]))
+		mutator.findPairs(dataset)
+
+		and: 'a solution'
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+		def ids = (0..<solution.size()).collect { solution.getId(it) }.sort()
+
+		expect: 'each candidate is a different order of the same events'
+		(1..200).every {
+			def next = mutator."$operator"(solution)
+			def order = (0..<next.size()).collect { next.getId(it) }
+			order.sort(false) == ids && order != (0..<solution.size()).collect { solution.getId(it) }
+		}
+
+		where:
+		operator << ['swap', 'block', 'reversal', 'pair']
+	}
+
+	def "pair moves keep the distance between the LAD and FAD"() {
+		given: 'a dataset with taxa'
+		def dataset = DatasetFixtures.simpleDataset()
+		def mutator = new PortfolioMutator()
+		mutator.findPairs(dataset)
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+
+		expect: 'the taxon that moved keeps its range'
+		(1..200).every {
+			def next = mutator.pair(solution)
+			mutator.pairs.any { id ->
+				def partner = mutator.partners[id]
+				(next.getPosition(id) != solution.getPosition(id)) &&
+						((next.getPosition(id) - next.getPosition(partner)) == (solution.getPosition(id) - solution.getPosition(partner)))
+			}
+		}
+	}
+
+	def "charges a candidate for the events that are evaluated"() {
+		given: 'a dataset with taxa'
+		def dataset = DatasetFixtures.simpleDataset()
+		def mutator = new PortfolioMutator()
+		mutator.configure(new Configuration([:]))
+		mutator.findPairs(dataset)
+		def solution = DatasetFixtures.simpleDatasetBest(dataset)
+
+		expect: 'an insertion costs the span of its move'
+		mutator.getCost(solution, solution.move(1, 4)) == 4
+		mutator.getCost(solution, solution.move(3, 2)) == 2
+
+		and: 'a candidate without a parent costs every event'
+		mutator.getCost(solution, mutator.swap(solution)) == solution.size()
+	}
+
+	def "prefers the cheaper operator when all improve the score alike"() {
+		given: 'a mutator that adapts often'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+		def mutator = new PortfolioMutator()
+		mutator.configure(new Configuration([window: 100]))
+
+		and: 'a current solution'
+		def current = Solution.initial(dataset)
+		current.score = 1000
+
+		when: 'every candidate is accepted with the same improvement'
+		1000.times {
+			def next = mutator.mutate(current)
+			next.score = current.score - 0.1
+			mutator.tried(100, next, current)
+			current = next
+		}
+
+		then: 'insertion is the most likely operator'
+		def probabilities = mutator.probabilities
+		probabilities[PortfolioMutator.INSERTION] == (probabilities as List).max()
+	}
+
+	def "adapts towards the operator that improves the score"() {
+		given: 'a mutator that adapts often'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+		def mutator = new PortfolioMutator()
+		mutator.configure(new Configuration([window: 100]))
+
+		and: 'a current solution'
+		def current = Solution.initial(dataset)
+		current.score = 1000
+
+		when: 'only insertions improve the score and are accepted'
+		1000.times {
+			def next = mutator.mutate(current)
+			def insertion = (next.parent != null)
+			next.score = insertion ? current.score - 0.1 : current.score + 10
+			mutator.tried(100, next, current)
+			if (insertion) {
+				current = next
+			}
+		}
+
+		then: 'insertion is the most likely operator'
+		def probabilities = mutator.probabilities
+		probabilities[PortfolioMutator.INSERTION] == (probabilities as List).max()
+		probabilities[PortfolioMutator.INSERTION] > 0.5
+
+		and: 'the pair operator is unused without taxa'
+		probabilities[PortfolioMutator.PAIR] == 0
+		Math.abs(probabilities.sum() - 1) < 1e-9
+	}
+}
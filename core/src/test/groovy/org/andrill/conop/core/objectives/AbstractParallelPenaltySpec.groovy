@@ -0,0 +1,128 @@
+package org.andrill.conop.core.objectives
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Dataset
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.internal.DefaultSolverConfiguration
+import org.andrill.conop.core.internal.DefaultSolverContext
+import org.andrill.conop.core.internal.StandardSolver
+import org.andrill.conop.core.penalties.AbstractParallelPenalty
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.solver.ThreadBudget
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+import com.google.common.base.Throwables
+
+class AbstractParallelPenaltySpec extends Specification {
+
+	static class FailingPenalty extends AbstractParallelPenalty {
+		FailingPenalty() {
+			super('Failing Penalty')
+		}
+
+		@Override
+		protected List<Future<Double>> internalScore(final Solution solution) {
+			[
+				execute({ 1.0d } as Callable),
+				execute({ throw new IOException('partition failed') } as Callable)
+			]
+		}
+	}
+
+	static class CountingPenalty extends AbstractParallelPenalty {
+		final AtomicInteger initialized = new AtomicInteger()
+
+		CountingPenalty() {
+			super('Counting Penalty')
+		}
+
+		@Override
+		protected void initialize(final Dataset dataset) {
+			initialized.incrementAndGet()
+			Thread.sleep(50)
+		}
+
+		@Override
+		protected List<Future<Double>> internalScore(final Solution solution) {
+			[execute({ 1.0d } as Callable)]
+		}
+	}
+
+	def "a failed partition fails the score"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a penalty with a failing partition'
+		def penalty = new FailingPenalty()
+		penalty.configure(new Configuration([processors: processors]))
+		penalty.context = context
+
+		when: 'score a solution'
+		penalty.score(DatasetFixtures.simpleDatasetBest(dataset))
+
+		then: 'the failure is rethrown'
+		def e = thrown(RuntimeException)
+		Throwables.getRootCause(e) instanceof IOException
+
+		when: 'score a batch'
+		penalty.scoreBatch([
+			DatasetFixtures.simpleDatasetBest(dataset),
+			DatasetFixtures.simpleDatasetWorst(dataset)
+		])
+
+		then: 'the failure is rethrown'
+		e = thrown(RuntimeException)
+		Throwables.getRootCause(e) instanceof IOException
+
+		where:
+		processors << [1, 2]
+	}
+
+	def "concurrent scores prepare the penalty once"() {
+		given: 'a penalty with a pool'
+		def dataset = DatasetFixtures.simpleDataset()
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+		def penalty = new CountingPenalty()
+		penalty.configure(new Configuration([processors: 2]))
+		penalty.context = context
+
+		when: 'score from several threads at once'
+		def threads = (1..8).collect {
+			Thread.start { penalty.score(DatasetFixtures.simpleDatasetBest(dataset)) }
+		}
+		threads*.join()
+
+		then: 'a single initialization and pool'
+		penalty.initialized.get() == 1
+
+		cleanup:
+		penalty.close()
+	}
+
+	def "the pool is shut down and its threads returned when the solver stops"() {
+		given: 'a configuration with a parallel penalty'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 3])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(StandardSolver, [threads: 4])
+		def solver = config.solver
+
+		when: 'solve'
+		def context = solver.solve(config, dataset)
+
+		then: 'the pool is gone and only the solver thread is still reserved'
+		solver.penalty.pool == null
+		context.get(ThreadBudget).free == 3
+	}
+}
@@ -1,5 +1,7 @@
 package org.andrill.conop.core.objectives
 
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Solution
 import org.andrill.conop.core.internal.DefaultSolverContext
 import org.andrill.conop.core.penalties.MatrixPenalty
 import org.andrill.conop.core.test.DatasetFixtures
@@ -29,4 +31,292 @@ class MatrixPenaltySpec extends Specification {
 		then: 'the score is zero'
 		score == 0
 	}
+
+	def "incremental scoring matches full scoring"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'an incremental and a full penalty function'
+		def incremental = new MatrixPenalty()
+		incremental.configure(new Configuration([processors: 1]))
+		incremental.context = context
+		def full = new MatrixPenalty()
+		full.configure(new Configuration([processors: 1, incremental: false]))
+		full.context = context
+
+		and: 'a random walk of single event moves'
+		def random = new Random(7)
+		def events = new ArrayList(dataset.events)
+		def solutions = (1..200).collect {
+			def e = events.remove(random.nextInt(events.size()))
+			events.add(random.nextInt(events.size() + 1), e)
+			new Solution(events)
+		}
+
+		expect: 'the same scores'
+		solutions.each { solution ->
+			assert Math.abs(incremental.score(solution) - full.score(solution)) < 1e-6
+		}
+	}
+
+	def "incremental scoring of moves matches full scoring"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'an incremental and a full penalty function'
+		def incremental = new MatrixPenalty()
+		incremental.configure(new Configuration([processors: 1]))
+		incremental.context = context
+		def full = new MatrixPenalty()
+		full.configure(new Configuration([processors: 1, incremental: false]))
+		full.context = context
+
+		and: 'a chain of candidates that are sometimes accepted'
+		def random = new Random(11)
+		def current = Solution.initial(dataset)
+
+		expect: 'the same scores'
+		300.times {
+			def next = current.move(random.nextInt(current.size()), random.nextInt(current.size()))
+			assert Math.abs(incremental.score(next) - full.score(next)) < 1e-6
+			if (random.nextInt(3) == 0) {
+				current = next
+			}
+		}
+	}
+
+	def "sparse scoring matches the dense cumulative matrix"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30, 3)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'the penalty function'
+		def penalty = new MatrixPenalty()
+		penalty.configure(new Configuration([processors: 1]))
+		penalty.context = context
+
+		and: 'some random solutions'
+		def random = new Random(5)
+		def solutions = (1..20).collect {
+			def events = new ArrayList(dataset.events)
+			Collections.shuffle(events, random)
+			new Solution(dataset, events)
+		}
+
+		expect: 'the same scores as the dense matrix'
+		solutions.each { solution ->
+			assert Math.abs(penalty.score(solution) - denseScore(dataset, solution)) < 1e-6
+		}
+	}
+
+	def "single precision scoring is close to double precision and matches it for the best"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a single and a double precision penalty function'
+		def single = new MatrixPenalty()
+		single.configure(new Configuration([processors: 1, precision: 'single']))
+		single.context = context
+		def full = new MatrixPenalty()
+		full.configure(new Configuration([processors: 1]))
+		full.context = context
+
+		and: 'a chain of candidates that are sometimes accepted'
+		def random = new Random(13)
+		def current = Solution.initial(dataset)
+		def best = Double.MAX_VALUE
+
+		expect: 'close scores and the double precision score for every new best, up to rounding'
+		300.times {
+			def next = current.move(random.nextInt(current.size()), random.nextInt(current.size()))
+			def score = single.score(next)
+			def expected = full.score(next)
+			assert Math.abs(score - expected) <= 1e-4 * Math.max(1, expected)
+			if (score < best) {
+				best = score
+				assert Math.abs(score - expected) <= 1e-12 * Math.max(1, expected)
+			}
+			if (random.nextInt(3) == 0) {
+				current = next
+			}
+		}
+	}
+
+	def "parallel scoring matches sequential scoring"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(12, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a parallel and a sequential penalty function'
+		def parallel = new MatrixPenalty()
+		parallel.configure(new Configuration([processors: 4, incremental: incremental]))
+		parallel.context = context
+		def sequential = new MatrixPenalty()
+		sequential.configure(new Configuration([processors: 1, incremental: incremental]))
+		sequential.context = context
+
+		and: 'some random solutions'
+		def random = new Random(19)
+		def solutions = (1..50).collect {
+			def events = new ArrayList(dataset.events)
+			Collections.shuffle(events, random)
+			new Solution(dataset, events)
+		}
+
+		expect: 'the same scores'
+		solutions.each { solution ->
+			assert Math.abs(parallel.score(solution) - sequential.score(solution)) < 1e-6
+		}
+
+		where:
+		incremental << [true, false]
+	}
+
+	def "bounded scoring is exact within the bound and exceeds it otherwise"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a bounded and a full penalty function'
+		def bounded = new MatrixPenalty()
+		bounded.configure(new Configuration([processors: processors, incremental: incremental]))
+		bounded.context = context
+		def full = new MatrixPenalty()
+		full.configure(new Configuration([processors: 1, incremental: false]))
+		full.context = context
+
+		and: 'a chain of candidates'
+		def random = new Random(29)
+		def current = Solution.initial(dataset)
+
+		expect: 'exact scores within the bound and partial scores above it'
+		200.times {
+			def next = current.move(random.nextInt(current.size()), random.nextInt(current.size()))
+			def expected = full.score(next)
+			def bound = expected * random.nextDouble() * 2
+			def score = bounded.score(next, bound)
+			if (expected <= bound) {
+				assert Math.abs(score - expected) < 1e-6
+			} else {
+				assert score > bound && score <= expected + 1e-6
+			}
+			if (random.nextInt(3) == 0) {
+				current = next
+			}
+		}
+
+		where:
+		processors | incremental
+		1          | true
+		1          | false
+		4          | true
+	}
+
+	def "batch scoring matches scoring one at a time"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a batch and a full penalty function'
+		def batch = new MatrixPenalty()
+		batch.configure(new Configuration([processors: 2]))
+		batch.context = context
+		def full = new MatrixPenalty()
+		full.configure(new Configuration([processors: 1, incremental: false]))
+		full.context = context
+
+		and: 'a chain of candidate blocks'
+		def random = new Random(17)
+		def current = Solution.initial(dataset)
+
+		expect: 'the same scores'
+		30.times {
+			def block = (1..8).collect {
+				current.move(random.nextInt(current.size()), random.nextInt(current.size()))
+			}
+			def scores = batch.scoreBatch(block)
+			block.eachWithIndex { next, i ->
+				assert Math.abs(scores[i] - full.score(next)) < 1e-6
+			}
+			current = block[random.nextInt(block.size())]
+		}
+	}
+
+	def "forked penalties score the same as their source"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(8, 40)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'a penalty function and a fork of it'
+		def source = new MatrixPenalty()
+		source.configure(new Configuration([processors: 1]))
+		source.context = context
+		def fork = source.fork()
+
+		and: 'a chain of candidates'
+		def random = new Random(23)
+		def current = Solution.initial(dataset)
+
+		expect: 'the same scores'
+		100.times {
+			def next = current.move(random.nextInt(current.size()), random.nextInt(current.size()))
+			assert Math.abs(fork.score(next) - source.score(next)) < 1e-6
+			if (random.nextBoolean()) {
+				current = next
+			}
+		}
+	}
+
+	private double denseScore(dataset, solution) {
+		dataset.locations.sum { location ->
+			def levels = location.levels.sort { a, b -> b <=> a }
+			def previous = null
+			solution.events.each { e ->
+				def o = location.getObservation(e)
+				def row = levels.collect { level ->
+					if (!o) {
+						return 0.0d
+					}
+					double diff = (level - o.level).doubleValue()
+					diff > 0 ? diff * o.weightUp : -diff * o.weightDown
+				}
+				if (previous) {
+					double min = previous[0]
+					row = (0..<row.size()).collect { j ->
+						min = Math.min(min, previous[j])
+						row[j] + min
+					}
+				}
+				previous = row
+			}
+			previous.min()
+		}
+	}
 }
@@ -1,5 +1,7 @@
 package org.andrill.conop.core.objectives
 
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.Solution
 import org.andrill.conop.core.internal.DefaultSolverContext
 import org.andrill.conop.core.penalties.PlacementPenalty
 import org.andrill.conop.core.test.DatasetFixtures
@@ -29,4 +31,52 @@ class PlacementPenaltySpec extends Specification {
 		then: 'the score is zero'
 		score == 0
 	}
+
+	def "scores do not depend on the previously scored solution"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+
+		and: 'a context'
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+
+		and: 'two objective functions'
+		def first = new PlacementPenalty()
+		first.configure(new Configuration([processors: 1]))
+		first.context = context
+		def second = new PlacementPenalty()
+		second.configure(new Configuration([processors: 1]))
+		second.context = context
+
+		and: 'some random solutions'
+		def random = new Random(23)
+		def solutions = (1..20).collect {
+			def events = new ArrayList(dataset.events)
+			Collections.shuffle(events, random)
+			new Solution(dataset, events)
+		}
+
+		when: 'score the solutions in opposite orders'
+		def forward = solutions.collect { first.score(it) }
+		def backward = solutions.reverse().collect { second.score(it) }.reverse()
+
+		then: 'the scores are the same'
+		forward == backward
+	}
+
+	def "placing events"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.simpleDataset()
+		def location = dataset.locations.asList()[0]
+
+		and: 'a placement'
+		def placement = new PlacementPenalty.LocationPlacement(location, dataset)
+
+		when: 'score the best solution'
+		def score = placement.score(DatasetFixtures.simpleDatasetBest(dataset))
+
+		then: 'each observed event is placed at its observed level'
+		score == 0
+		location.observations.every { placement.getPlacement(it.event) == it.level }
+	}
 }
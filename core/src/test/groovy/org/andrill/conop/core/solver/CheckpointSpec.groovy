@@ -0,0 +1,146 @@
+package org.andrill.conop.core.solver
+
+import java.util.concurrent.TimeUnit
+
+import org.andrill.conop.core.Configuration
+import org.andrill.conop.core.HaltedException
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.internal.DefaultSolverConfiguration
+import org.andrill.conop.core.internal.DefaultSolverContext
+import org.andrill.conop.core.internal.StandardSolver
+import org.andrill.conop.core.listeners.StoppingListener
+import org.andrill.conop.core.mutators.RandomMutator
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.test.DatasetFixtures
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+
+import spock.lang.Specification
+
+class CheckpointSpec extends Specification {
+
+	@Rule
+	TemporaryFolder folder = new TemporaryFolder()
+
+	def "checkpoints round trip through a file"() {
+		given: 'a dataset and a solution'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+		def solution = Solution.initial(dataset).move(3, 7)
+		solution.setScore(42.5)
+
+		and: 'a checkpoint'
+		def checkpoint = new Checkpoint()
+		def bytes = new ByteArrayOutputStream()
+		Checkpoint.writeSolution(new DataOutputStream(bytes), solution)
+		checkpoint.put('solution', bytes.toByteArray())
+		def stats = new SolverStats(scored: 10, total: 20, best: 42.5)
+		checkpoint.save('stats', stats)
+
+		when: 'write and read it'
+		def file = new File(folder.root, 'conop.ckpt')
+		checkpoint.write(file)
+		def read = Checkpoint.read(file)
+		def restored = new SolverStats()
+		read.restore('stats', restored)
+		def copy = Checkpoint.readSolution(read.get('solution'), dataset)
+
+		then: 'the same state'
+		restored.scored == 10
+		restored.total == 20
+		restored.best == 42.5
+		copy.events == solution.events
+		copy.score == 42.5
+
+		and: 'no temporary file is left behind'
+		!new File(file.path + '.tmp').exists()
+	}
+
+	def "corrupt checkpoints are rejected"() {
+		given: 'a checkpoint file'
+		def checkpoint = new Checkpoint()
+		checkpoint.save('stats', new SolverStats(scored: 10))
+		def file = new File(folder.root, 'conop.ckpt')
+		checkpoint.write(file)
+
+		when: 'corrupt it'
+		def bytes = file.bytes
+		bytes[bytes.length - 12] ^= 0xFF
+		file.bytes = bytes
+		Checkpoint.read(file)
+
+		then: 'an error'
+		thrown(IOException)
+	}
+
+	def "restored mutators continue the same sequence"() {
+		given: 'a dataset and a mutator'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+		def context = new DefaultSolverContext()
+		context.dataset = dataset
+		def mutator = new RandomMutator()
+		mutator.configure(new Configuration([:]))
+		mutator.context = context
+
+		when: 'save it and restore it into another mutator'
+		def checkpoint = new Checkpoint()
+		checkpoint.save('mutator', mutator)
+		def other = new RandomMutator()
+		other.configure(new Configuration([:]))
+		other.context = context
+		checkpoint.restore('mutator', other)
+
+		then: 'the same candidates'
+		def current = Solution.initial(dataset)
+		(1..20).every { mutator.mutate(current).events == other.mutate(current).events }
+	}
+
+	def "checkpoints require the inline generator"() {
+		given: 'a solver'
+		def solver = new StandardSolver()
+
+		when: 'configure a checkpoint with a background generator'
+		solver.configure(new Configuration([generator: generator, (option): new File(folder.root, 'conop.ckpt').path]))
+
+		then: 'rejected'
+		thrown(IllegalArgumentException)
+
+		where:
+		generator | option
+		'ring'    | 'checkpoint'
+		'queue'   | 'checkpoint'
+		'ring'    | 'resume'
+	}
+
+	def "solving resumes from a checkpoint"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(6, 30)
+		def file = new File(folder.root, 'conop.ckpt')
+
+		and: 'a configuration that checkpoints every block and halts early'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 1])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 20])
+		config.configureSolver(StandardSolver, [checkpoint: file.path, checkpointFrequency: 0])
+		config.configureListener(StoppingListener, [steps: 1000])
+
+		when: 'solve until halted'
+		def solver = config.solver
+		solver.solve(config, dataset)
+
+		then: 'the run stopped before the end'
+		thrown(HaltedException)
+
+		when: 'wait for the last checkpoint to be written and resume from it'
+		solver.context.get(ThreadBudget).background.awaitTermination(10, TimeUnit.SECONDS)
+		def saved = new SolverStats()
+		Checkpoint.read(file).restore('stats', saved)
+		config.filterListeners(StoppingListener)
+		config.updateSolver([resume: file.path, checkpoint: null], true)
+		def second = config.solver.solve(config, dataset)
+
+		then: 'the resumed run starts from the saved state'
+		second.get(SolverStats).scored > saved.scored
+		second.best.score <= saved.best
+	}
+}
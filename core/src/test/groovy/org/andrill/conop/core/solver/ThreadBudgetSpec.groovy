@@ -0,0 +1,83 @@
+package org.andrill.conop.core.solver
+
+import org.andrill.conop.core.internal.DefaultSolverConfiguration
+import org.andrill.conop.core.internal.IslandSolver
+import org.andrill.conop.core.internal.StandardSolver
+import org.andrill.conop.core.penalties.MatrixPenalty
+import org.andrill.conop.core.schedules.ExponentialSchedule
+import org.andrill.conop.core.test.DatasetFixtures
+
+import spock.lang.Specification
+
+class ThreadBudgetSpec extends Specification {
+
+	def "reserving threads never exceeds the budget"() {
+		given: 'a budget'
+		def budget = new ThreadBudget(4)
+
+		expect: 'reservations are granted until the budget is used up'
+		budget.reserve(3) == 3
+		budget.reserve(3) == 1
+		budget.reserve(1) == 0
+		budget.free == 0
+
+		when: 'threads are released'
+		budget.release(2)
+
+		then: 'they can be reserved again'
+		budget.free == 2
+		budget.reserve(5) == 2
+	}
+
+	def "the system property overrides the available threads"() {
+		given: 'the property'
+		System.setProperty(ThreadBudget.PROPERTY, '3')
+
+		expect:
+		ThreadBudget.available() == 3
+
+		cleanup:
+		System.clearProperty(ThreadBudget.PROPERTY)
+	}
+
+	def "the penalty only uses the threads the solver leaves"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+
+		and: 'a configuration with a budget of 3 threads'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 8])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 5])
+		config.configureSolver(StandardSolver, [threads: 3])
+
+		when: 'solve'
+		def solver = config.solver
+		def context = solver.solve(config, dataset)
+
+		then: 'the penalty pool used the threads left after the solver thread'
+		def budget = context.get(ThreadBudget)
+		budget.threads == 3
+		solver.penalty.procs == 2
+
+		and: 'returned them when the solver stopped'
+		budget.free == 2
+	}
+
+	def "parallel chains leave no threads for the penalty"() {
+		given: 'a dataset'
+		def dataset = DatasetFixtures.randomDataset(4, 20)
+
+		and: 'a configuration with more islands than threads'
+		def config = new DefaultSolverConfiguration()
+		config.configurePenalty(MatrixPenalty, [processors: 8])
+		config.configureSchedule(ExponentialSchedule, [initial: 100, delta: 0.5, steps: 5])
+		config.configureSolver(IslandSolver, [islands: 4, migration: 5, threads: 2])
+
+		when: 'solve'
+		def context = config.solver.solve(config, dataset)
+
+		then: 'the islands share the budget and still finish'
+		context.get(ThreadBudget).free == 0
+		context.get(SolverStats).scored >= 4 * 5
+	}
+}
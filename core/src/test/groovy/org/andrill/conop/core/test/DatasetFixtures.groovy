@@ -37,7 +37,7 @@ class DatasetFixtures {
 		DefaultEvent e4 = dataset.events.find { it.name == "Fossil 2 FAD" }
 		DefaultEvent e5 = dataset.events.find { it.name == "Ash" }
 
-		return new Solution([e1, e3, e5, e4, e2])
+		return new Solution(dataset, [e1, e3, e5, e4, e2])
 	}
 
 	static Solution simpleDatasetWorst(Dataset dataset = DatasetFixtures.simpleDataset()) {
@@ -47,6 +47,31 @@ class DatasetFixtures {
 		DefaultEvent e4 = dataset.events.find { it.name == "Fossil 2 FAD" }
 		DefaultEvent e5 = dataset.events.find { it.name == "Ash" }
 
-		return new Solution([e5, e2, e4, e3, e1])
+		return new Solution(dataset, [e5, e2, e4, e3, e1])
+	}
+
+	static Dataset randomDataset(int locations, int events, long seed = 42) {
+		def random = new Random(seed)
+
+		// events
+		def all = (1..events).collect { new DefaultEvent("Event ${it}") }
+
+		// sections observing a random subset of the events
+		def sections = (1..locations).collect { l ->
+			def observed = all.findAll { random.nextInt(3) == 0 } ?: [all[random.nextInt(events)]]
+			new DefaultLocation("Section ${l}", observed.collect { e ->
+				new DefaultObservation(e, -random.nextInt(50), 1 + random.nextInt(10), 1 + random.nextInt(10))
+			})
+		}
+
+		// make sure every event is observed somewhere
+		def missing = all.findAll { e -> !sections.any { it.getObservation(e) } }
+		if (missing) {
+			sections << new DefaultLocation("Section ${locations + 1}", missing.collect { e ->
+				new DefaultObservation(e, -random.nextInt(50), 1.0, 1.0)
+			})
+		}
+
+		return new DefaultDataset(sections)
 	}
 }
@@ -54,7 +54,7 @@ public class SolutionParser {
 					events.add(e);
 				}
 			}
-			initial = new Solution(events);
+			initial = new Solution(dataset, events);
 		}
 		return initial;
 	}
@@ -3,6 +3,7 @@ package org.andrill.conop.data.cli
 import groovy.util.logging.Slf4j
 
 import org.andrill.conop.core.cli.CliCommand
+import org.andrill.conop.core.internal.StandardSolver
 import org.andrill.conop.data.simulation.SimulationDSL
 
 @Slf4j
@@ -10,8 +11,15 @@ class RunCommand implements CliCommand {
 
 	@Override
 	void execute(List<String> args) {
+		// check for a checkpoint to resume from
+		def resume = null
+		if (args && args[0] == '--resume' && args.size() > 1) {
+			resume = args[1]
+			args = args.drop(2)
+		}
+
 		if (!args) {
-			println "Usage: run <simulation file or URL>"
+			println "Usage: run [--resume <checkpoint>] <simulation file or URL>"
 			System.exit(0)
 		}
 
@@ -32,6 +40,21 @@ class RunCommand implements CliCommand {
 			def dataset = dsl.dataset
 			def config = dsl.solverConfiguration
 			def solver = config.solver
+			if (resume) {
+				// only the standard solver with the inline generator writes and
+				// reads checkpoints
+				if (!(solver instanceof StandardSolver)) {
+					println "Unable to resume: '${solver.class.simpleName}' does not support checkpoints"
+					System.exit(1)
+				}
+				if (!solver.supportsCheckpoints()) {
+					println "Unable to resume: checkpoints require the 'inline' generator"
+					System.exit(1)
+				}
+				log.info "Resuming from checkpoint '{}'", resume
+				config.updateSolver([resume: resume], true)
+				solver = config.solver
+			}
 			solver.solve(config, dataset)
 		} catch (e) {
 			println "Halted: ${e.message.padRight(80)}"
@@ -47,7 +70,7 @@ class RunCommand implements CliCommand {
 
 	@Override
 	String getHelp() {
-		"""\trun <simulation file or URL> - runs a CONOP4J simulation"""
+		"""\trun [--resume <checkpoint>] <simulation file or URL> - runs a CONOP4J simulation, optionally resuming from a checkpoint of the standard solver with the inline generator"""
 	}
 
 	@Override
@@ -2,14 +2,19 @@ package org.andrill.conop.data.simulation.internal
 
 import org.andrill.conop.core.constraints.EventConstraints
 import org.andrill.conop.core.constraints.NullConstraints
+import org.andrill.conop.core.constraints.SoftConstraints
 import org.andrill.conop.core.internal.DefaultSolverConfiguration
+import org.andrill.conop.core.internal.IslandSolver
 import org.andrill.conop.core.internal.QueueSolver
 import org.andrill.conop.core.internal.StandardSolver
+import org.andrill.conop.core.internal.TemperingSolver
 import org.andrill.conop.core.listeners.ConsoleProgressListener
 import org.andrill.conop.core.listeners.PositionsListener
 import org.andrill.conop.core.listeners.SnapshotListener
 import org.andrill.conop.core.listeners.StatsLoggerListener
 import org.andrill.conop.core.listeners.StoppingListener
+import org.andrill.conop.core.mutators.ConstrainedMutator
+import org.andrill.conop.core.mutators.PortfolioMutator
 import org.andrill.conop.core.mutators.RandomMutator
 import org.andrill.conop.core.penalties.MatrixPenalty
 import org.andrill.conop.core.penalties.PlacementPenalty
@@ -22,10 +27,13 @@ class SolverDelegate {
 
 	static CONSTRAINTS = [
 		'null': NullConstraints.class.canonicalName,
-		'event': EventConstraints.class.canonicalName
+		'event': EventConstraints.class.canonicalName,
+		'soft': SoftConstraints.class.canonicalName
 	]
 	static MUTATORS = [
-		'random': RandomMutator.class.canonicalName
+		'random': RandomMutator.class.canonicalName,
+		'constrained': ConstrainedMutator.class.canonicalName,
+		'portfolio': PortfolioMutator.class.canonicalName
 	]
 	static SCHEDULES = [
 		'linear': LinearSchedule.class.canonicalName,
@@ -45,7 +53,9 @@ class SolverDelegate {
 	]
 	static SOLVERS = [
 		'conop': StandardSolver.class.canonicalName,
-		'qnop': QueueSolver.class.canonicalName
+		'qnop': QueueSolver.class.canonicalName,
+		'tempering': TemperingSolver.class.canonicalName,
+		'islands': IslandSolver.class.canonicalName
 	]
 
 	protected classFor(name, lookup) {
@@ -4,6 +4,7 @@ import groovy.json.JsonSlurper
 import groovy.util.logging.Slf4j
 
 import org.andrill.conop.core.Solution
+import org.andrill.conop.core.internal.StandardSolver
 import org.andrill.conop.core.listeners.SnapshotListener
 import org.andrill.conop.core.util.TimerUtils
 import org.andrill.conop.data.simulation.SimulationDSL
@@ -11,6 +12,7 @@ import org.andrill.conop.data.simulation.SimulationDSL
 @Slf4j
 class Agent extends Thread {
 	protected static final long DELAY = 30 * 1000
+	protected static final File CHECKPOINTS = new File('checkpoints')
 	protected URL api
 	protected String name
 	protected int jobs = 0
@@ -33,21 +35,39 @@ class Agent extends Thread {
 
 			def config = dsl.solverConfiguration
 
-			if (job?.stats?.temperature > 0) {
+			// checkpoint the job so it can resume exactly after a restart, per
+			// agent so several agents can share a working directory
+			def checkpoint = new File(CHECKPOINTS, "job-${Integer.toHexString("${job.url} ${name}".hashCode())}.ckpt")
+			def checkpoints = config.solver.with { (it instanceof StandardSolver) && it.supportsCheckpoints() }
+			if (checkpoints) {
+				CHECKPOINTS.mkdirs()
+				config.updateSolver(checkpoint: checkpoint.path, true)
+			}
+			if (checkpoints && checkpoint.exists()) {
+				log.info "Resuming existing job from checkpoint {}", checkpoint
+				config.updateSolver(resume: checkpoint.path, true)
+			} else if (job?.stats?.temperature > 0) {
 				log.info "Resuming existing job, using initial temperature {}C", job.stats.temperature
 				config.updateSchedule(initial: job.stats.temperature, true)
 			}
-			if (job?.solution?.events) {
+			if (!(checkpoints && checkpoint.exists()) && job?.solution?.events) {
 				log.info "Resuming existing job, overriding initial solution"
 				def events = []
 				job?.solution?.events.each { e ->
 					events << dataset.events.find { it.name == e.name }
 				}
-				config.configureInitialSolution(new Solution(events))
+				config.configureInitialSolution(new Solution(dataset, events))
 			}
 
 			config.filterListeners SnapshotListener.class
-			config.configureListener(AgentListener.class, [api: job.url, name: "${name} (Job #${jobs})", frequency: 60])
+			int frequency = (job.tempering ? job.tempering.exchange : 60) as int
+			config.configureListener(AgentListener.class, [api: job.url, name: "${name} (Job #${jobs})", frequency: frequency])
+
+			// run on a rung of the job's temperature ladder
+			if (job.tempering) {
+				log.info "Joining the temperature ladder of job {}", job.url
+				config = new LadderConfiguration(config, job.tempering.ratio as double)
+			}
 
 			def solver = config.solver
 			def context = solver.solve(config, dataset)
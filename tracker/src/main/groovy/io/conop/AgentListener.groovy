@@ -37,7 +37,7 @@ class AgentListener extends AsyncListener {
 		if (lock.tryLock()) {
 			try {
 				next = TimerUtils.counter + frequency
-				updateTracker(best)
+				updateTracker(best, [temperature: temp, score: current.score])
 			} catch (e) {
 				log.debug "Error in AgentListener", e
 			} finally {
@@ -92,18 +92,22 @@ class AgentListener extends AsyncListener {
 
 	@Override
 	public void stopped(Solution best) {
-		updateTracker(best);
+		updateTracker(best, [stopped: true]);
 	}
 
-	protected void updateTracker(Solution best) {
+	protected void updateTracker(Solution best, Map replica) {
 		log.info "Sending best solution to ${api}"
 
 		try {
+			def ladder = context.get(LadderSchedule)
 			def payload = [
 				agent: name,
 				stats: buildStatsJson(),
 				solution: buildSolutionJson(best)
 			]
+			if (ladder) {
+				payload.replica = replica
+			}
 
 			// POST to the server
 			def conn = api.openConnection()
@@ -116,12 +120,19 @@ class AgentListener extends AsyncListener {
 			conn.outputStream << JsonOutput.toJson(payload)
 
 			def json = new JsonSlurper().parse(conn.inputStream)
-			if (json?.solution?.score < best.score) {
+			if (ladder) {
+				// replicas keep their own solutions and only move between rungs
+				def rung = json?.tempering?.replicas?.get(name)?.rung
+				if (rung != null && rung != ladder.rung) {
+					log.info "Moving from rung {} to rung {} of the temperature ladder", ladder.rung, rung
+					ladder.rung = rung as int
+				}
+			} else if (json?.solution?.score < best.score) {
 				def events = json?.solution?.events.collect {
 					new DefaultEvent(it.name)
 				}
 
-				def next = new Solution(events)
+				def next = new Solution(context.dataset, events)
 				context.next = next
 			}
 		} catch (e) {
@@ -12,6 +12,9 @@ import com.google.inject.Inject
 
 @Slf4j
 class JobService {
+	protected static final double DEFAULT_RATIO = 1.5
+	protected static final int DEFAULT_EXCHANGE = 10
+
 	protected SecureRandom random = new SecureRandom()
 	protected jobs = []
 	protected File db = null
@@ -49,7 +52,7 @@ class JobService {
 		db.write(JsonOutput.toJson(jobs))
 	}
 
-	Map add(String source) {
+	Map add(String source, Map options = null) {
 		if (!source.trim()) {
 			return null
 		}
@@ -73,6 +76,17 @@ class JobService {
 			agents: [:]
 		]
 		job.url = "${publicAddress}/api/jobs/${job.id}".toString()
+
+		// agents on a tempering job form one distributed replica exchange run
+		if (options?.mode == 'tempering') {
+			job.tempering = [
+				ratio: (options.ratio ?: DEFAULT_RATIO) as double,
+				exchange: (options.exchange ?: DEFAULT_EXCHANGE) as int,
+				attempted: 0l,
+				exchanged: 0l,
+				replicas: [:]
+			]
+		}
 		jobs << job
 
 		writeJobs()
@@ -124,6 +138,15 @@ class JobService {
 			stats.skipped = skipped
 			stats.total = total
 
+			// free the rungs of agents that have gone away
+			if (job.tempering) {
+				def gone = job.tempering.replicas.keySet().findAll { !job.agents[it]?.active }
+				if (gone) {
+					gone.each { job.tempering.replicas.remove(it) }
+					compact(job.tempering)
+				}
+			}
+
 			// update job status
 			if (stats.temperature <= 0.1) {
 				job.active = false
@@ -144,6 +167,11 @@ class JobService {
 				job.agents[json.agent] = json.stats
 			}
 
+			// handle replica
+			if (job.tempering && json.agent && json.replica) {
+				temper(job.tempering, json.agent, json.replica)
+			}
+
 			// update solution
 			if (!job.solution || json?.solution?.score <= job.solution.score) {
 				job.solution = json.solution
@@ -168,6 +196,81 @@ class JobService {
 		}
 	}
 
+	/**
+	 * Records the state of an agent's replica, assigning it a rung on the
+	 * temperature ladder if it has none, and attempts an exchange with a
+	 * neighbouring rung.
+	 */
+	protected void temper(tempering, String name, replica) {
+		def replicas = tempering.replicas
+		if (replica.stopped) {
+			replicas.remove(name)
+			compact(tempering)
+			return
+		}
+
+		// new agents join at the hot end of the ladder
+		def existing = replicas[name]
+		if (existing == null) {
+			existing = [rung: replicas.size(), posts: 0l, stale: false]
+			replicas[name] = existing
+		}
+		existing.temperature = replica.temperature
+		existing.score = replica.score
+		existing.posts++
+
+		// an agent moved by a neighbour's exchange reports its old rung once
+		if (existing.stale) {
+			existing.stale = false
+		} else {
+			exchange(tempering, name)
+		}
+	}
+
+	/**
+	 * Attempts to exchange the rungs of an agent and its colder or hotter
+	 * neighbour, alternating between the two, with the usual Metropolis
+	 * criterion. Exchanging rungs is the same as exchanging the solutions but
+	 * the solutions never leave the agents. The agent learns its new rung from
+	 * the response and its neighbour on its next update.
+	 */
+	protected void exchange(tempering, String name) {
+		def replica = tempering.replicas[name]
+		int rung = replica.rung
+		int other = (replica.posts % 2 == 0) ? rung + 1 : rung - 1
+		def neighbour = tempering.replicas.find { k, v -> v.rung == other }
+		if (!neighbour || neighbour.value.stale) {
+			return
+		}
+
+		def colder = (rung < other) ? replica : neighbour.value
+		def hotter = (rung < other) ? neighbour.value : replica
+		if (colder.temperature <= 0 || hotter.temperature <= 0) {
+			return
+		}
+
+		tempering.attempted++
+		double delta = (colder.score - hotter.score) * ((1 / colder.temperature) - (1 / hotter.temperature))
+		if (delta >= 0 || Math.exp(delta) > random.nextDouble()) {
+			replica.rung = other
+			neighbour.value.rung = rung
+			neighbour.value.stale = true
+			tempering.exchanged++
+		}
+	}
+
+	/**
+	 * Renumbers the rungs of the ladder from 0 (coldest), keeping their order.
+	 */
+	protected void compact(tempering) {
+		tempering.replicas.values().sort { it.rung }.eachWithIndex { replica, i ->
+			if (replica.rung != i) {
+				replica.rung = i
+				replica.stale = true
+			}
+		}
+	}
+
 	void delete(String id) {
 		jobs.findAll { it.id == id }.each { job ->
 			job.active = false
@@ -0,0 +1,23 @@
+package io.conop
+
+import org.andrill.conop.core.schedules.Schedule
+import org.andrill.conop.core.solver.SolverConfiguration
+
+/**
+ * Wraps the schedule of a solver configuration in a {@link LadderSchedule}.
+ */
+class LadderConfiguration implements SolverConfiguration {
+	@Delegate
+	protected final SolverConfiguration config
+	protected final double ratio
+
+	LadderConfiguration(SolverConfiguration config, double ratio) {
+		this.config = config
+		this.ratio = ratio
+	}
+
+	@Override
+	public Schedule getSchedule() {
+		new LadderSchedule(config.schedule, ratio)
+	}
+}
@@ -0,0 +1,69 @@
+package io.conop
+
+import org.andrill.conop.core.AbstractConfigurable
+import org.andrill.conop.core.Checkpointable
+import org.andrill.conop.core.Configurable
+import org.andrill.conop.core.Solution
+import org.andrill.conop.core.schedules.Schedule
+import org.andrill.conop.core.solver.SolverContext
+
+/**
+ * Runs a schedule on a rung of the distributed temperature ladder of a
+ * tempering job. The temperature is the temperature of the schedule times
+ * ratio^rung, so the coldest rung follows the schedule and the whole ladder
+ * cools with it. The {@link AgentListener} moves the agent between rungs as
+ * the tracker exchanges replicas.
+ */
+class LadderSchedule extends AbstractConfigurable implements Schedule, Checkpointable {
+	protected final Schedule schedule
+	protected final double ratio
+	protected volatile int rung = 0
+
+	LadderSchedule(Schedule schedule, double ratio) {
+		this.schedule = schedule
+		this.ratio = ratio
+	}
+
+	@Override
+	public void setContext(SolverContext context) {
+		super.setContext(context)
+		context.put(LadderSchedule, this)
+		if (schedule instanceof Configurable) {
+			schedule.context = context
+		}
+	}
+
+	protected double getFactor() {
+		Math.pow(ratio, rung)
+	}
+
+	@Override
+	public double getInitial() {
+		schedule.initial * factor
+	}
+
+	@Override
+	public double next(Solution solution) {
+		double temp = schedule.next(solution)
+		temp > 0 ? temp * factor : temp
+	}
+
+	@Override
+	public void restore(DataInput input) throws IOException {
+		if (schedule instanceof Checkpointable) {
+			schedule.restore(input)
+		}
+	}
+
+	@Override
+	public void save(DataOutput output) throws IOException {
+		if (schedule instanceof Checkpointable) {
+			schedule.save(output)
+		}
+	}
+
+	@Override
+	public String toString() {
+		"Ladder Schedule (${schedule})"
+	}
+}
@@ -20,7 +20,7 @@ ratpack {
 					render json(service.allJobs)
 				}
 				post {
-					def job = service.add(request.body.text)
+					def job = service.add(request.body.text, request.queryParams)
 					if (job) {
 						response.status 201
 						response.headers.set "Location", job.url
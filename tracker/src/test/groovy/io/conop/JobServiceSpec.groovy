@@ -1,6 +1,7 @@
 package io.conop;
 
 import static org.junit.Assert.*
+import groovy.json.JsonOutput
 
 import org.junit.Before
 
@@ -67,4 +68,72 @@ class JobServiceSpec extends Specification {
 		and: "can get the job back"
 		assert job == jobService.get(job.id)
 	}
+
+	def "agents on a tempering job are assigned rungs in the order they join"() {
+		given: "a tempering job"
+		def job = jobService.add("job source code here", [mode: 'tempering', ratio: '2'])
+
+		when: "three agents report, colder ones with better scores"
+		post(job, "a", 10, 1)
+		post(job, "b", 100, 2)
+		post(job, "c", 1000, 4)
+
+		then: "each has its own rung"
+		job.tempering.ratio == 2
+		job.tempering.replicas.a.rung == 0
+		job.tempering.replicas.b.rung == 1
+		job.tempering.replicas.c.rung == 2
+
+		when: "the middle agent stops"
+		post(job, "b", 100, 2, [stopped: true])
+
+		then: "the ladder closes the gap"
+		!job.tempering.replicas.b
+		job.tempering.replicas.a.rung == 0
+		job.tempering.replicas.c.rung == 1
+	}
+
+	def "a hotter replica with a better score exchanges rungs with its colder neighbour"() {
+		given: "a tempering job with two agents"
+		def job = jobService.add("job source code here", [mode: 'tempering'])
+		post(job, "cold", 100, 1)
+
+		when: "the hotter agent reports a better score"
+		def result = post(job, "hot", 50, 1.5)
+
+		then: "the agents exchange rungs"
+		result.tempering.replicas.hot.rung == 0
+		result.tempering.replicas.cold.rung == 1
+		job.tempering.exchanged == 1
+
+		when: "the moved agent reports from its old rung"
+		post(job, "cold", 100, 1)
+
+		then: "no exchange is attempted with its stale state"
+		job.tempering.attempted == 1
+		job.tempering.replicas.cold.rung == 1
+	}
+
+	def "agents on a regular job do not get rungs"() {
+		given: "a job"
+		def job = jobService.add("job source code here")
+
+		when: "an agent reports"
+		post(job, "a", 10, 1)
+
+		then:
+		!job.tempering
+		job.agents.a
+	}
+
+	protected post(job, String agent, double score, double temperature, Map replica = null) {
+		def payload = [
+			agent: agent,
+			stats: [scored: 1, skipped: 0, total: 1, score: score, temperature: temperature, constraints: true,
+				updated: System.currentTimeMillis()],
+			solution: [score: score, events: []],
+			replica: replica ?: [temperature: temperature, score: score]
+		]
+		jobService.update(job.id, [inputStream: new ByteArrayInputStream(JsonOutput.toJson(payload).bytes)])
+	}
 }